@@ -0,0 +1,71 @@
+package com.library.auth;
+
+import com.library.config.JwtConfig;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JwtUtil 產生 / 驗證 token 的基準測試
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class JwtBenchmark {
+
+    private JwtUtil jwtUtil;
+    private JwtPrincipalCache cache;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        jwtUtil = newJwtUtil();
+        cache = newJwtPrincipalCache(10_000);
+        token = jwtUtil.generateToken(1L, "member1", "Member");
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return jwtUtil.generateToken(1L, "member1", "Member");
+    }
+
+    @Benchmark
+    public boolean validateToken() {
+        return jwtUtil.validateToken(token);
+    }
+
+    /**
+     * 舊流程：validate + extractUserId + extractRole（每次都重新解析）
+     */
+    @Benchmark
+    public String validateAndExtract() {
+        if (!jwtUtil.validateToken(token)) {
+            return null;
+        }
+        return jwtUtil.extractUserId(token) + ":" + jwtUtil.extractRole(token);
+    }
+
+    @Benchmark
+    public JwtPrincipal parsePrincipal() {
+        return jwtUtil.parsePrincipal(token);
+    }
+
+    @Benchmark
+    public JwtPrincipal parsePrincipalCached() {
+        return cache.computeIfAbsent(token, jwtUtil::parsePrincipal);
+    }
+
+    static JwtUtil newJwtUtil() {
+        JwtConfig jwtConfig = new JwtConfig();
+        ReflectionTestUtils.setField(jwtConfig, "jwtExpiration", 3600);
+        JwtUtil jwtUtil = new JwtUtil();
+        ReflectionTestUtils.setField(jwtUtil, "jwtSecretKey", jwtConfig.jwtSecretKey());
+        ReflectionTestUtils.setField(jwtUtil, "jwtConfig", jwtConfig);
+        return jwtUtil;
+    }
+
+    static JwtPrincipalCache newJwtPrincipalCache(int maxSize) {
+        return new JwtPrincipalCache(maxSize);
+    }
+}
@@ -0,0 +1,31 @@
+package com.library.book;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 書目正規化 normalizeString / generateUniqueBookKey 的基準測試
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class BookKeysBenchmark {
+
+    private final String title = "  Effective Java  ";
+    private final String author = " Joshua Bloch ";
+
+    @Benchmark
+    public String normalizeString() {
+        return BookKeys.normalizeString(title);
+    }
+
+    @Benchmark
+    public String generateUniqueBookKey() {
+        return BookKeys.generateUniqueBookKey(
+                BookKeys.normalizeString(title),
+                BookKeys.normalizeString(author),
+                2018,
+                2L);
+    }
+}
@@ -0,0 +1,66 @@
+package com.library.book;
+
+import com.library.book.dto.BookDtos;
+import com.library.branch.LibraryBranchRepository;
+import com.library.inventory.AvailabilityCounters;
+import com.library.inventory.BarcodeAllocator;
+import com.library.inventory.InventoryItemRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * BookController.search 結果轉換（書目 + 各分館館藏統計）的基準測試
+ * cacheSize=0 時每次都經過 Repository 查詢與轉換，用來比較館藏快取命中前後的差異
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class BookSearchMappingBenchmark {
+
+    @Param({"5", "100"})
+    public int pageSize;
+
+    @Param({"4"})
+    public int branches;
+
+    @Param({"0", "100000"})
+    public long cacheSize;
+
+    private BookController controller;
+    private List<Object[]> rows;
+
+    @Setup
+    public void setUp() {
+        rows = new ArrayList<>();
+        List<Object[]> availability = new ArrayList<>();
+        for (long bookId = 1; bookId <= pageSize; bookId++) {
+            rows.add(new Object[]{bookId, "key" + bookId, "title " + bookId, "author " + bookId, 2024, 2L, 0.5f});
+            for (long branchId = 1; branchId <= branches; branchId++) {
+                availability.add(new Object[]{bookId, branchId, "Branch " + branchId, 10L, 3L});
+            }
+        }
+
+        // stubOnly：不記錄呼叫紀錄，避免長時間量測時記憶體持續成長
+        InventoryItemRepository inventoryRepository = mock(InventoryItemRepository.class, withSettings().stubOnly());
+        when(inventoryRepository.findAvailabilityByBookIds(anyCollection())).thenReturn(availability);
+        BookAvailabilityCache availabilityCache =
+                new BookAvailabilityCache(inventoryRepository, new SimpleMeterRegistry(), cacheSize, 300);
+        controller = new BookController(mock(BookRepository.class), inventoryRepository,
+                mock(LibraryBranchRepository.class), mock(BarcodeAllocator.class), mock(AvailabilityCounters.class),
+                availabilityCache);
+    }
+
+    @Benchmark
+    public List<BookDtos.BookAvailability> toBookAvailabilities() {
+        return controller.toBookAvailabilities(rows);
+    }
+}
@@ -0,0 +1,62 @@
+package com.library.loan;
+
+import com.library.book.BookCategoryRuleRegistry;
+import com.library.inventory.AvailabilityCounters;
+import com.library.inventory.InventoryItemRepository;
+import com.library.loan.dto.BorrowDtos;
+import com.library.user.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * LoanService.normalizePayload（條碼 / copy_id 正規化）的基準測試
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class NormalizePayloadBenchmark {
+
+    @Param({"1", "20"})
+    public int items;
+
+    private LoanService loanService;
+    private List<BorrowDtos.BorrowItem> payload;
+
+    @Setup
+    public void setUp() {
+        payload = new ArrayList<>();
+        List<Object[]> resolved = new ArrayList<>();
+        for (int i = 0; i < items; i++) {
+            // 一半用條碼、一半用 copy_id
+            if (i % 2 == 0) {
+                String barcode = "BC" + i;
+                payload.add(new BorrowDtos.BorrowItem(null, barcode));
+                resolved.add(new Object[]{barcode, (long) i + 1});
+            } else {
+                payload.add(new BorrowDtos.BorrowItem((long) i + 1, null));
+            }
+        }
+
+        // stubOnly：不記錄呼叫紀錄，避免長時間量測時記憶體持續成長
+        InventoryItemRepository inventoryItemRepository = mock(InventoryItemRepository.class, withSettings().stubOnly());
+        when(inventoryItemRepository.findIdsByBarcodeIn(anyCollection())).thenReturn(resolved);
+        loanService = new LoanService(mock(LoanRepository.class), inventoryItemRepository,
+                mock(UserRepository.class), mock(BookCategoryRuleRegistry.class), mock(AvailabilityCounters.class),
+                mock(EntityManager.class), new SimpleMeterRegistry(), "pessimistic");
+    }
+
+    @Benchmark
+    public List<Long> normalizePayload() {
+        return loanService.normalizePayload(payload, BorrowDtos.BorrowItem::bookCopiesId, BorrowDtos.BorrowItem::barcode);
+    }
+}
@@ -20,6 +20,9 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     @Autowired
     private JwtUtil jwtUtil;
 
+    @Autowired
+    private JwtPrincipalCache jwtPrincipalCache;
+
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, 
                                   FilterChain filterChain) throws ServletException, IOException {
@@ -30,21 +33,19 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             String token = authHeader.substring(7);
             
             try {
-                if (jwtUtil.validateToken(token)) {
-                    Long userId = jwtUtil.extractUserId(token);
-                    String role = jwtUtil.extractRole(token);
-                    
-                    // 建立深份驗證對象
-                    UsernamePasswordAuthenticationToken authToken = 
-                        new UsernamePasswordAuthenticationToken(
-                            userId, 
-                            null, 
-                            Collections.singletonList(new SimpleGrantedAuthority("ROLE_" + role))
-                        );
-                    
-                    // 設置到 SecurityContext
-                    SecurityContextHolder.getContext().setAuthentication(authToken);
-                }
+                // 單次解析 + 快取：同一個 token 只做一次簽章驗證
+                JwtPrincipal principal = jwtPrincipalCache.computeIfAbsent(token, jwtUtil::parsePrincipal);
+                
+                // 建立深份驗證對象
+                UsernamePasswordAuthenticationToken authToken = 
+                    new UsernamePasswordAuthenticationToken(
+                        principal.userId(), 
+                        null, 
+                        Collections.singletonList(new SimpleGrantedAuthority("ROLE_" + principal.role()))
+                    );
+                
+                // 設置到 SecurityContext
+                SecurityContextHolder.getContext().setAuthentication(authToken);
             } catch (Exception e) {
                 // Token 無效，繼續處理但不設置認證
                 SecurityContextHolder.clearContext();
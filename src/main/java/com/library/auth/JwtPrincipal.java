@@ -0,0 +1,16 @@
+package com.library.auth;
+
+import java.time.Instant;
+
+/**
+ * 驗證通過的 JWT 內容（不可變）
+ */
+public record JwtPrincipal(
+        Long userId,
+        String role,
+        Instant expiresAt
+) {
+    public boolean isExpired(Instant now) {
+        return !expiresAt.isAfter(now);
+    }
+}
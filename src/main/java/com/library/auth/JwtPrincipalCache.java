@@ -0,0 +1,81 @@
+package com.library.auth;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.function.Function;
+
+/**
+ * 已驗證 JWT 的快取
+ * 以 token 的 SHA-256 為 key（不保存原始 token），命中時略過 HMAC 驗證與 JSON 解析
+ * 每個項目在該 token 的 exp 到期；達到上限時以 W-TinyLFU 淘汰，新 token 仍會被快取
+ */
+@Component
+public class JwtPrincipalCache {
+
+    private final Cache<String, JwtPrincipal> entries;
+
+    public JwtPrincipalCache(@Value("${jwt.cache.max-size:10000}") long maxSize) {
+        // max-size = 0 時不快取，每次都驗證 token
+        this.entries = maxSize > 0
+                ? Caffeine.newBuilder()
+                    .maximumSize(maxSize)
+                    .expireAfter(new TokenExpiry())
+                    .build()
+                : null;
+    }
+
+    /**
+     * 取得快取中的 principal，沒有或已過期時呼叫 parser 驗證並寫入快取
+     * parser 驗證失敗時直接拋出例外，不寫入快取
+     */
+    public JwtPrincipal computeIfAbsent(String token, Function<String, JwtPrincipal> parser) {
+        if (entries == null) {
+            return parser.apply(token);
+        }
+        return entries.get(hash(token), key -> parser.apply(token));
+    }
+
+    public int size() {
+        return entries != null ? (int) entries.estimatedSize() : 0;
+    }
+
+    /**
+     * 項目存活到 token 的 exp 為止，讀取不會延長
+     */
+    private static final class TokenExpiry implements Expiry<String, JwtPrincipal> {
+        @Override
+        public long expireAfterCreate(String key, JwtPrincipal principal, long currentTime) {
+            return Math.max(0, Duration.between(Instant.now(), principal.expiresAt()).toNanos());
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, JwtPrincipal principal, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, principal, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, JwtPrincipal principal, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    private static String hash(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hashed = digest.digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hashed);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -70,10 +70,23 @@ public class JwtUtil {
 
     public boolean validateToken(String token) {
         try {
+            // 解析時已檢查簽章與到期時間（過期會拋出 ExpiredJwtException）
             extractAllClaims(token);
-            return !isTokenExpired(token);
+            return true;
         } catch (JwtException | IllegalArgumentException e) {
             return false;
         }
     }
+
+    /**
+     * 單次解析：驗證簽章與到期時間後回傳 userId、role、到期時間
+     */
+    public JwtPrincipal parsePrincipal(String token) {
+        Claims claims = extractAllClaims(token);
+        return new JwtPrincipal(
+                Long.parseLong(claims.getSubject()),
+                claims.get("role", String.class),
+                claims.getExpiration().toInstant()
+        );
+    }
 }
@@ -1,40 +1,122 @@
 package com.library.auth;
 
-import org.springframework.beans.factory.annotation.Autowired;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 實際的館員驗證服務
  * 呼叫外部 API 驗證館員身份
+ * 外部 API 的保護：
+ *  - 結果以員工編號為 key 短暫快取（cache-ttl-seconds，最多 10000 筆）
+ *  - bulkhead：同時呼叫數上限（max-concurrent），超過時最多等待 bulkhead-wait-ms
+ *  - circuit breaker：連續失敗（逾時 / 連線失敗 / 5xx）達門檻後暫停呼叫，直接回 503
  */
 @Service
 @Profile("prod")
 public class LibrarianVerificationServiceImpl implements LibrarianVerificationService {
-    
-    @Value("${library.external-api.url:https://todo.com.tw}")
-    private String externalApiUrl;
-    
-    @Value("${library.external-api.auth-header:todo}")
-    private String authHeader;
-    
-    @Autowired
-    private RestTemplate restTemplate;
-    
+
+    private static final int CACHE_MAX_SIZE = 10000;
+
+    private final RestTemplate restTemplate;
+    private final String externalApiUrl;
+    private final String authHeader;
+    private final long bulkheadWaitMillis;
+    private final Semaphore bulkhead;
+    private final CircuitBreaker circuitBreaker;
+    private final Cache<String, Boolean> cache;
+
+    public LibrarianVerificationServiceImpl(
+            RestTemplate restTemplate,
+            @Value("${library.external-api.url:https://todo.com.tw}") String externalApiUrl,
+            @Value("${library.external-api.auth-header:todo}") String authHeader,
+            @Value("${library.external-api.cache-ttl-seconds:60}") long cacheTtlSeconds,
+            @Value("${library.external-api.max-concurrent:10}") int maxConcurrent,
+            @Value("${library.external-api.bulkhead-wait-ms:100}") long bulkheadWaitMillis,
+            @Value("${library.external-api.circuit-breaker.failure-threshold:5}") int failureThreshold,
+            @Value("${library.external-api.circuit-breaker.open-seconds:30}") long openSeconds) {
+        this(restTemplate, externalApiUrl, authHeader, Duration.ofSeconds(cacheTtlSeconds), maxConcurrent,
+                bulkheadWaitMillis, new CircuitBreaker(failureThreshold, Duration.ofSeconds(openSeconds), Clock.systemUTC()),
+                Clock.systemUTC());
+    }
+
+    LibrarianVerificationServiceImpl(RestTemplate restTemplate, String externalApiUrl, String authHeader,
+                                     Duration cacheTtl, int maxConcurrent, long bulkheadWaitMillis,
+                                     CircuitBreaker circuitBreaker, Clock clock) {
+        this.restTemplate = restTemplate;
+        this.externalApiUrl = externalApiUrl;
+        this.authHeader = authHeader;
+        this.bulkhead = new Semaphore(maxConcurrent);
+        this.bulkheadWaitMillis = bulkheadWaitMillis;
+        this.circuitBreaker = circuitBreaker;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(CACHE_MAX_SIZE)
+                .expireAfterWrite(cacheTtl)
+                .ticker(() -> TimeUnit.MILLISECONDS.toNanos(clock.millis()))
+                .build();
+    }
+
     @Override
     public boolean verifyLibrarian(String librarianId) {
+        Boolean cached = cache.getIfPresent(librarianId);
+        if (cached != null) {
+            return cached;
+        }
+
+        if (!acquireBulkhead()) {
+            System.err.println("[REAL] 驗證館員 ID: " + librarianId + " 失敗: 同時驗證請求過多");
+            throw unavailable();
+        }
+        try {
+            if (!circuitBreaker.tryAcquire()) {
+                System.err.println("[REAL] 驗證館員 ID: " + librarianId + " 失敗: 外部 API 暫停呼叫 (circuit open)");
+                throw unavailable();
+            }
+
+            boolean isSuccess;
+            try {
+                isSuccess = callExternalApi(librarianId);
+                circuitBreaker.onSuccess();
+            } catch (RuntimeException e) {
+                // 逾時、連線失敗、5xx
+                circuitBreaker.onFailure();
+                System.err.println("[REAL] 驗證館員 ID: " + librarianId + " 時發生錯誤: " + e.getMessage());
+                throw unavailable();
+            }
+
+            cache.put(librarianId, isSuccess);
+            return isSuccess;
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    CircuitBreaker.State circuitState() {
+        return circuitBreaker.state();
+    }
+
+    private boolean callExternalApi(String librarianId) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Authorization", authHeader);
+
+        HttpEntity<String> entity = new HttpEntity<>(headers);
+
         try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.set("Authorization", authHeader);
-            
-            HttpEntity<String> entity = new HttpEntity<>(headers);
-            
             // 呼叫外部 API by restTemplate
             ResponseEntity<String> response = restTemplate.exchange(
                 externalApiUrl,
@@ -42,19 +124,33 @@ public class LibrarianVerificationServiceImpl implements LibrarianVerificationSe
                 entity,
                 String.class
             );
-            
+
             // 檢查回應狀態碼
             boolean isSuccess = response.getStatusCode().is2xxSuccessful();
-            
+
             System.out.println("[REAL] 驗證館員 ID: " + librarianId +
-                             " -> " + (isSuccess ? "成功" : "失敗") + 
+                             " -> " + (isSuccess ? "成功" : "失敗") +
                              " (HTTP " + response.getStatusCode() + ")");
-            
+
             return isSuccess;
-            
-        } catch (Exception e) {
-            System.err.println("[REAL] 驗證館員 ID: " + librarianId + " 時發生錯誤: " + e.getMessage());
+
+        } catch (HttpClientErrorException e) {
+            // 4xx：外部 API 正常回應，驗證不通過
+            System.out.println("[REAL] 驗證館員 ID: " + librarianId + " -> 失敗 (HTTP " + e.getStatusCode() + ")");
+            return false;
+        }
+    }
+
+    private boolean acquireBulkhead() {
+        try {
+            return bulkhead.tryAcquire(bulkheadWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             return false;
         }
     }
+
+    private static ResponseStatusException unavailable() {
+        return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Librarian verification temporarily unavailable");
+    }
 }
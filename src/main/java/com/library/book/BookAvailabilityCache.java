@@ -0,0 +1,147 @@
+package com.library.book;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.library.book.dto.BookDtos;
+import com.library.inventory.BookAvailabilityChangedEvent;
+import com.library.inventory.InventoryItemRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 搜尋結果的各分館館藏快取（bookId -> 各分館 BranchAvailability）
+ * 未命中的書目以單次查詢批次讀取；館藏計數變動時由 BookAvailabilityChangedEvent 在交易 commit 後精準失效
+ * 以 W-TinyLFU 淘汰，只保留熱門書目；expire-after-write 作為漏接事件（例如直接以 SQL 修改資料）時的上限
+ * 批次讀取期間若收到失效事件，讀到的舊資料不會留在快取：每個書目有一個（分段共用的）版本號，失效時遞增，
+ * 寫入快取後版本號已變動的項目會被移除
+ */
+@Component
+public class BookAvailabilityCache {
+    static final String CACHE_NAME = "book.availability";
+    private static final int GENERATION_STRIPES = 4096;
+
+    private final InventoryItemRepository inventoryRepository;
+    private final Cache<Long, List<BookDtos.BranchAvailability>> cache;
+    private final Counter invalidationCounter;
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    public BookAvailabilityCache(InventoryItemRepository inventoryRepository,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${availability.cache.max-size:100000}") long maxSize,
+                                 @Value("${availability.cache.ttl-seconds:300}") long ttlSeconds) {
+        this.inventoryRepository = inventoryRepository;
+        // max-size = 0 時不快取，每次都查詢資料庫
+        this.cache = maxSize > 0
+                ? Caffeine.newBuilder()
+                    .maximumSize(maxSize)
+                    .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                    .recordStats()
+                    .build()
+                : null;
+        if (cache != null) {
+            // cache_gets_total{result=hit/miss}、cache_evictions_total、cache_size 等
+            CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+        }
+        this.invalidationCounter = Counter.builder("library.availability.cache.invalidations")
+            .description("Books invalidated in the availability cache after a counter change")
+            .register(meterRegistry);
+    }
+
+    /**
+     * 取得多本書目的各分館館藏；沒有副本的書目回傳空 List
+     */
+    public Map<Long, List<BookDtos.BranchAvailability>> getAll(Collection<Long> bookIds) {
+        if (bookIds.isEmpty()) {
+            return Map.of();
+        }
+        if (cache == null) {
+            return load(Set.copyOf(bookIds));
+        }
+        Map<Long, List<BookDtos.BranchAvailability>> result = new HashMap<>(cache.getAllPresent(bookIds));
+        Set<Long> missing = new HashSet<>();
+        for (Long bookId : bookIds) {
+            if (!result.containsKey(bookId)) {
+                missing.add(bookId);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        // 讀取前記下版本號；讀取期間被失效的書目不能留在快取
+        Map<Long, Long> generationsBeforeLoad = new HashMap<>(missing.size() * 2);
+        for (Long bookId : missing) {
+            generationsBeforeLoad.put(bookId, generation(bookId));
+        }
+        Map<Long, List<BookDtos.BranchAvailability>> loaded = load(missing);
+        for (Map.Entry<Long, List<BookDtos.BranchAvailability>> entry : loaded.entrySet()) {
+            // 先寫入再檢查：檢查之後才發生的失效會由 listener 直接移除
+            cache.put(entry.getKey(), entry.getValue());
+            if (generation(entry.getKey()) != generationsBeforeLoad.get(entry.getKey())) {
+                cache.asMap().remove(entry.getKey(), entry.getValue());
+            }
+        }
+        result.putAll(loaded);
+        return result;
+    }
+
+    /**
+     * 館藏計數變動：commit 後才失效，避免其他請求在 commit 前把舊資料重新讀進快取
+     * 不在交易內發布的事件（fallbackExecution）也會直接處理
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAvailabilityChanged(BookAvailabilityChangedEvent event) {
+        if (cache != null) {
+            // 先遞增版本號再失效，進行中的批次讀取才能發現自己讀到的是舊資料
+            for (Long bookId : event.bookIds()) {
+                generations.incrementAndGet(stripe(bookId));
+            }
+            cache.invalidateAll(event.bookIds());
+        }
+        invalidationCounter.increment(event.bookIds().size());
+    }
+
+    private long generation(Long bookId) {
+        return generations.get(stripe(bookId));
+    }
+
+    private static int stripe(Long bookId) {
+        int hash = bookId.hashCode();
+        return (hash ^ (hash >>> 16)) & (GENERATION_STRIPES - 1);
+    }
+
+    /**
+     * 單次查詢讀取 book_branch_availability；每個 bookId 都會有一筆結果（沒有副本時為空 List），讓「沒有館藏」也會被快取
+     */
+    private Map<Long, List<BookDtos.BranchAvailability>> load(Set<? extends Long> bookIds) {
+        Map<Long, List<BookDtos.BranchAvailability>> loaded = new HashMap<>();
+        for (Object[] row : inventoryRepository.findAvailabilityByBookIds(List.copyOf(bookIds))) {
+            Long bookId = ((Number) row[0]).longValue();
+            loaded.computeIfAbsent(bookId, id -> new ArrayList<>())
+                    .add(new BookDtos.BranchAvailability(
+                            ((Number) row[1]).longValue(),
+                            (String) row[2],
+                            ((Number) row[3]).intValue(),
+                            ((Number) row[4]).intValue()));
+        }
+        Map<Long, List<BookDtos.BranchAvailability>> result = new HashMap<>(bookIds.size() * 2);
+        for (Long bookId : bookIds) {
+            result.put(bookId, List.copyOf(loaded.getOrDefault(bookId, List.of())));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,115 @@
+package com.library.book;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 書籍類型借閱規則快取
+ * 以 category ID 為 key 保存 book_categories 的不可變快照，穩定狀態下查詢規則不需存取資料庫
+ * 快照超過 refresh-seconds 後於下一次查詢時重新載入（分類規則只能直接以 SQL 修改，不經過應用程式）
+ * 查無分類時（例如剛新增分類）會提早重新載入，但每 MISS_RELOAD_INTERVAL 最多一次，
+ * 持續送入不存在的 category_id 不會每次都查詢資料庫
+ */
+@Component
+public class BookCategoryRuleRegistry {
+
+    /**
+     * 單一分類的借閱規則
+     */
+    public record CategoryRule(
+            Long categoryId,
+            String category,
+            int maxConcurrent,
+            int loanPeriodDays
+    ) {}
+
+    private record Snapshot(Map<Long, CategoryRule> rules, Instant loadedAt) {}
+
+    static final Duration MISS_RELOAD_INTERVAL = Duration.ofSeconds(5);
+
+    private final BookCategoryRepository bookCategoryRepository;
+    private final Duration refreshInterval;
+    private final Clock clock;
+
+    private volatile Snapshot current;
+
+    @Autowired
+    public BookCategoryRuleRegistry(BookCategoryRepository bookCategoryRepository,
+                                    @Value("${book-category.rules.refresh-seconds:60}") long refreshSeconds) {
+        this(bookCategoryRepository, Duration.ofSeconds(refreshSeconds), Clock.systemUTC());
+    }
+
+    BookCategoryRuleRegistry(BookCategoryRepository bookCategoryRepository, Duration refreshInterval, Clock clock) {
+        this.bookCategoryRepository = bookCategoryRepository;
+        this.refreshInterval = refreshInterval;
+        this.clock = clock;
+    }
+
+    /**
+     * 取得分類規則；快照中找不到時，若距離上次載入已超過 MISS_RELOAD_INTERVAL 則重新載入一次
+     */
+    public CategoryRule getRule(Long categoryId) {
+        CategoryRule rule = snapshot().get(categoryId);
+        if (rule == null) {
+            rule = reloadAfterMiss(categoryId).get(categoryId);
+        }
+        if (rule == null) {
+            throw new IllegalStateException("Unknown book category: " + categoryId);
+        }
+        return rule;
+    }
+
+    /**
+     * 目前的規則快照；過期時重新載入
+     */
+    public Map<Long, CategoryRule> snapshot() {
+        Snapshot snapshot = current;
+        if (snapshot != null && !isStale(snapshot)) {
+            return snapshot.rules();
+        }
+        return refreshIfStale();
+    }
+
+    private boolean isStale(Snapshot snapshot) {
+        return !clock.instant().isBefore(snapshot.loadedAt().plus(refreshInterval));
+    }
+
+    /**
+     * 同時有多個請求發現快照過期時，只有第一個會查詢資料庫
+     */
+    private synchronized Map<Long, CategoryRule> refreshIfStale() {
+        Snapshot snapshot = current;
+        if (snapshot != null && !isStale(snapshot)) {
+            return snapshot.rules();
+        }
+        return reload();
+    }
+
+    /**
+     * 查無分類時的重新載入：快照仍在最小間隔內（或其他請求已載入含此分類的快照）時直接使用目前快照
+     */
+    private synchronized Map<Long, CategoryRule> reloadAfterMiss(Long categoryId) {
+        Snapshot snapshot = current;
+        if (snapshot != null && (snapshot.rules().containsKey(categoryId)
+                || clock.instant().isBefore(snapshot.loadedAt().plus(MISS_RELOAD_INTERVAL)))) {
+            return snapshot.rules();
+        }
+        return reload();
+    }
+
+    private synchronized Map<Long, CategoryRule> reload() {
+        Map<Long, CategoryRule> loaded = bookCategoryRepository.findAll().stream()
+                .map(c -> new CategoryRule(c.getId(), c.getCategory(), c.getRuleMaxConcurrent(), c.getRuleLoanPeriodDays()))
+                .collect(Collectors.toUnmodifiableMap(CategoryRule::categoryId, Function.identity()));
+        current = new Snapshot(loaded, clock.instant());
+        return loaded;
+    }
+}
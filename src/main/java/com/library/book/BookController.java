@@ -3,12 +3,15 @@ package com.library.book;
 import com.library.book.dto.BookDtos;
 import com.library.branch.LibraryBranch;
 import com.library.branch.LibraryBranchRepository;
+import com.library.inventory.AvailabilityCounters;
+import com.library.inventory.BarcodeAllocator;
 import com.library.inventory.InventoryItem;
 import com.library.inventory.InventoryItemRepository;
 import jakarta.validation.Valid;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
@@ -18,8 +21,12 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 import org.springframework.http.HttpStatus;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @RestController
@@ -29,11 +36,22 @@ public class BookController {
     private final BookRepository bookRepository;
     private final InventoryItemRepository inventoryRepository;
     private final LibraryBranchRepository branchRepository;
+    private final BarcodeAllocator barcodeAllocator;
+    private final AvailabilityCounters availabilityCounters;
+    private final BookAvailabilityCache availabilityCache;
 
-    public BookController(BookRepository bookRepository, InventoryItemRepository inventoryRepository, LibraryBranchRepository branchRepository) {
+    private static final int DEFAULT_PAGE_SIZE = 5;
+    private static final int MAX_PAGE_SIZE = 100;
+
+    public BookController(BookRepository bookRepository, InventoryItemRepository inventoryRepository,
+                          LibraryBranchRepository branchRepository, BarcodeAllocator barcodeAllocator,
+                          AvailabilityCounters availabilityCounters, BookAvailabilityCache availabilityCache) {
         this.bookRepository = bookRepository;
         this.inventoryRepository = inventoryRepository;
         this.branchRepository = branchRepository;
+        this.barcodeAllocator = barcodeAllocator;
+        this.availabilityCounters = availabilityCounters;
+        this.availabilityCache = availabilityCache;
     }
 
     @PostMapping
@@ -41,9 +59,9 @@ public class BookController {
     public ResponseEntity<?> create(@Valid @RequestBody BookDtos.CreateBookRequest request, 
                                    Authentication authentication) {
         // 1.標準化輸入參數
-        String normalizedTitle = normalizeString(request.title());
-        String normalizedAuthor = normalizeString(request.author());
-        String uniqueBookKey = generateUniqueBookKey(normalizedTitle, normalizedAuthor, request.publishYear(), request.categoryId());
+        String normalizedTitle = BookKeys.normalizeString(request.title());
+        String normalizedAuthor = BookKeys.normalizeString(request.author());
+        String uniqueBookKey = BookKeys.generateUniqueBookKey(normalizedTitle, normalizedAuthor, request.publishYear(), request.categoryId());
         
         // 2.Upsert並且獲取 bookId
         Long bookId = bookRepository.upsertBook(
@@ -55,38 +73,46 @@ public class BookController {
             request.extra() != null ? request.extra() : "{}"
         );
         
-        // 3.建立Book
-        Book book = new Book();
-        book.setId(bookId);
-        
-        // 4.驗證並建立book_copies
+        // 3.驗證並建立book_copies
         if (request.bookCopies() == null || request.bookCopies().isEmpty()) {
             throw new IllegalArgumentException("至少需要指定一個分館的副本數量");
         }
         
+        // 單次查詢驗證所有分館存在
+        Set<Long> requestedBranchIds = request.bookCopies().stream()
+                .map(BookDtos.BookCopyRequest::branchId)
+                .collect(Collectors.toSet());
+        Set<Long> existingBranchIds = branchRepository.findAllById(requestedBranchIds).stream()
+                .map(LibraryBranch::getId)
+                .collect(Collectors.toSet());
+        
+        List<Long> branchIds = new ArrayList<>();
         for (BookDtos.BookCopyRequest copyRequest : request.bookCopies()) {
             // 驗證分館存在
-            LibraryBranch branch = branchRepository.findById(copyRequest.branchId())
-                .orElseThrow(() -> new IllegalArgumentException("分館不存在: " + copyRequest.branchId()));
+            if (!existingBranchIds.contains(copyRequest.branchId())) {
+                throw new IllegalArgumentException("分館不存在: " + copyRequest.branchId());
+            }
             
             // 驗證副本數量
             if (copyRequest.quantity() <= 0) {
                 throw new IllegalArgumentException("副本數量必須大於 0");
             }
             
-            // 建立指定數量的副本
             for (int i = 0; i < copyRequest.quantity(); i++) {
-                String barcode = generateBarcode(bookId, copyRequest.branchId(), i);
-                InventoryItem item = InventoryItem.builder()
-                        .book(book)
-                        .branch(branch)
-                        .status("AVAILABLE")
-                        .barcode(barcode)
-                        .build();
-                inventoryRepository.save(item);
+                branchIds.add(copyRequest.branchId());
             }
         }
         
+        // 條碼由序號區塊配置，不會重複
+        List<String> barcodes = barcodeAllocator.allocate(branchIds.size());
+        
+        // 4.單一 multi-row INSERT 建立所有副本
+        inventoryRepository.insertCopies(
+                bookId,
+                branchIds.toArray(Long[]::new),
+                barcodes.toArray(String[]::new));
+        availabilityCounters.copiesAdded(bookId, branchIds);
+        
         return ResponseEntity.ok(Map.of("id", bookId));
     }
 
@@ -96,6 +122,9 @@ public class BookController {
             @RequestParam(value = "author", required = false) String author,
             @RequestParam(value = "year", required = false) Integer year,
             @RequestParam(value = "page", defaultValue = "1") int page,
+            @RequestParam(value = "size", defaultValue = "" + DEFAULT_PAGE_SIZE) int size,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "withTotal", defaultValue = "true") boolean withTotal,
             Authentication authentication) {
         
         // 確認分頁為正整數
@@ -103,45 +132,80 @@ public class BookController {
             throw new IllegalArgumentException("Page number must be greater than 0");
         }
         
-        // 固定每頁顯示5筆
-        int size = 5;
+        // 每頁筆數需介於 1 ~ MAX_PAGE_SIZE
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Page size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        
+        List<Object[]> rows;
+        Integer responsePage = null;
+        Long total = null;
+        Integer totalPages = null;
+        boolean hasNext;
+        
+        if (cursor != null) {
+            // Keyset 分頁：從 cursor 之後繼續取，多取一筆判斷是否還有下一頁
+            // 有關鍵字時依相似度排序，無法以索引定位（只省去 COUNT 與 OFFSET）；沒有關鍵字時依 id 以主鍵索引定位
+            SearchCursor after = SearchCursor.decode(cursor);
+            rows = title == null && author == null
+                    ? bookRepository.searchAfterById(year, after.id(), size + 1)
+                    : bookRepository.searchAfter(title, author, year, after.score(), after.id(), size + 1);
+            hasNext = rows.size() > size;
+            if (hasNext) {
+                rows = rows.subList(0, size);
+            }
+        } else {
+            // 這裡需把client傳來的分頁-1
+            Pageable pageable = PageRequest.of(page - 1, size);
+            responsePage = page;
+            if (withTotal) {
+                Page<Object[]> bookPage = bookRepository.search(title, author, year, pageable);
+                total = bookPage.getTotalElements();
+                totalPages = bookPage.getTotalPages();
+                rows = bookPage.getContent();
+                hasNext = bookPage.hasNext();
+            } else {
+                Slice<Object[]> bookSlice = bookRepository.searchSlice(title, author, year, pageable);
+                rows = bookSlice.getContent();
+                hasNext = bookSlice.hasNext();
+            }
+        }
+        
+        // 下一頁的 cursor：本頁最後一筆的 (score, id)
+        String nextCursor = null;
+        if (hasNext && !rows.isEmpty()) {
+            Object[] last = rows.get(rows.size() - 1);
+            nextCursor = new SearchCursor(((Number) last[6]).floatValue(), (Long) last[0]).encode();
+        }
+
+        BookDtos.SearchResponse response = new BookDtos.SearchResponse(
+            toBookAvailabilities(rows),
+            responsePage,
+            size,
+            total,
+            totalPages,
+            nextCursor
+        );
         
-        // 這裡需把client傳來的分頁-1
-        Pageable pageable = PageRequest.of(page - 1, size);
-        Page<Object[]> bookPage = bookRepository.search(title, author, year, pageable);
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 將搜尋結果轉換為回應格式，各分館館藏由 BookAvailabilityCache 取得（未命中的書目以單次查詢讀取）
+     */
+    List<BookDtos.BookAvailability> toBookAvailabilities(List<Object[]> rows) {
+        List<Long> bookIds = rows.stream()
+                .map(row -> (Long) row[0])
+                .collect(Collectors.toList());
+        Map<Long, List<BookDtos.BranchAvailability>> branchesByBook = availabilityCache.getAll(bookIds);
         
-        // 轉換為回應格式
-        List<BookDtos.BookAvailability> bookAvailabilities = bookPage.getContent().stream().map(row -> {
+        return rows.stream().map(row -> {
             Long bookId = (Long) row[0];
             String bookTitle = (String) row[2];
             String bookAuthor = (String) row[3];
             Integer publishYear = (Integer) row[4];
             Long categoryId = (Long) row[5];
             
-            // 查詢副本
-            Book tempBook = new Book();
-            tempBook.setId(bookId);
-            List<InventoryItem> items = inventoryRepository.findByBook(tempBook);
-            
-            // Group items by branch and calculate totals
-            Map<Long, List<InventoryItem>> itemsByBranch = items.stream()
-                    .collect(Collectors.groupingBy(item -> item.getBranch().getId()));
-            
-            List<BookDtos.BranchAvailability> branches = itemsByBranch.entrySet().stream()
-                    .map(entry -> {
-                        Long branchId = entry.getKey();
-                        List<InventoryItem> branchItems = entry.getValue();
-                        String branchName = branchItems.get(0).getBranch().getName();
-                        
-                        int total = branchItems.size();
-                        int available = (int) branchItems.stream()
-                                .filter(item -> "AVAILABLE".equals(item.getStatus()))
-                                .count();
-                        
-                        return new BookDtos.BranchAvailability(branchId, branchName, total, available);
-                    })
-                    .collect(Collectors.toList());
-            
             return new BookDtos.BookAvailability(
                 bookId, 
                 bookTitle, 
@@ -149,53 +213,34 @@ public class BookController {
                 publishYear, 
                 categoryId,
                 "{}",
-                branches
+                branchesByBook.getOrDefault(bookId, List.of())
             );
         }).collect(Collectors.toList());
-
-        BookDtos.SearchResponse response = new BookDtos.SearchResponse(
-            bookAvailabilities,
-            page,
-            size,
-            bookPage.getTotalElements(),
-            bookPage.getTotalPages()
-        );
-        
-        return ResponseEntity.ok(response);
     }
-    
+
     /**
-     * 標準化：trim + 小寫
+     * 搜尋用的 Keyset cursor：(相關度分數, bookId)，以 Base64 編碼對外不透明
      */
-    private String normalizeString(String input) {
-        if (input == null) {
-            throw new IllegalArgumentException("標題和作者不能為空");
-        }
-        String normalized = input.trim();
-        if (normalized.isEmpty()) {
-            throw new IllegalArgumentException("標題和作者不能為空白");
+    record SearchCursor(Float score, Long id) {
+        String encode() {
+            String raw = score + ":" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
         }
-        return normalized.toLowerCase();
-    }
-    
-    /**
-     * 產生書的唯一識別
-     */
-    private String generateUniqueBookKey(String title, String author, Integer publishYear, Long categoryId) {
-        if (title == null || author == null || publishYear == null || categoryId == null) {
-            throw new IllegalArgumentException("標題、作者、出版年份和類別ID都不能為空");
+
+        static SearchCursor decode(String cursor) {
+            if (cursor.isBlank()) {
+                return new SearchCursor(null, null);
+            }
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int sep = raw.lastIndexOf(':');
+                return new SearchCursor(Float.parseFloat(raw.substring(0, sep)), Long.parseLong(raw.substring(sep + 1)));
+            } catch (RuntimeException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+            }
         }
-        return String.format("%s|%s|%d|%d", title, author, publishYear, categoryId);
     }
     
-    /**
-     * 產生模擬條碼
-     */
-    private String generateBarcode(Long bookId, Long branchId, int copyIndex) {
-        long timestamp = System.currentTimeMillis();
-        return String.format("B%03d_%02d_%03d_%d", bookId % 1000, branchId % 100, copyIndex + 1, timestamp % 10000);
-    }
-
     /**
      * 更新書籍資訊（部分更新）
      */
@@ -229,7 +274,7 @@ public class BookController {
 
         // 如果有更新，重新生成 unique_book_key
         if (updated) {
-            book.setUniqueBookKey(generateUniqueBookKey(
+            book.setUniqueBookKey(BookKeys.generateUniqueBookKey(
                     book.getTitle(), 
                     book.getAuthor(), 
                     book.getPublishYear(), 
@@ -246,6 +291,7 @@ public class BookController {
      */
     @DeleteMapping("/copies/{copyId}")
     @PreAuthorize("hasRole('Librarian')")
+    @Transactional
     public ResponseEntity<Map<String, Object>> deleteBookCopy(
             @PathVariable("copyId") Long copyId
     ) {
@@ -263,9 +309,13 @@ public class BookController {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Cannot delete borrowed copy");
         }
 
-        // 4.標記為已刪除
+        // 4.標記為已刪除，可借的副本同時扣除館藏計數
+        boolean wasAvailable = "AVAILABLE".equals(copy.getStatus());
         copy.setStatus("DELETED");
         inventoryRepository.save(copy);
+        if (wasAvailable) {
+            availabilityCounters.availableCopyRemoved(copyId);
+        }
 
         return ResponseEntity.ok(Map.of(
                 "message", "Book copy deleted successfully",
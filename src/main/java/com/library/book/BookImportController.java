@@ -0,0 +1,39 @@
+package com.library.book;
+
+import com.library.book.dto.BookDtos;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+/**
+ * 書目批次匯入 API
+ * request body 直接以串流交給 BookImportService，不經過 message converter
+ */
+@RestController
+@RequestMapping("/api/books")
+public class BookImportController {
+
+    static final String TEXT_CSV = "text/csv";
+    static final String APPLICATION_NDJSON = "application/x-ndjson";
+
+    private final BookImportService bookImportService;
+
+    public BookImportController(BookImportService bookImportService) {
+        this.bookImportService = bookImportService;
+    }
+
+    @PostMapping(value = "/import", consumes = {TEXT_CSV, APPLICATION_NDJSON})
+    public ResponseEntity<BookDtos.ImportResponse> importBooks(HttpServletRequest request) throws IOException, SQLException {
+        BookImportService.Format format = MediaType.parseMediaType(request.getContentType())
+                .isCompatibleWith(MediaType.parseMediaType(TEXT_CSV))
+                ? BookImportService.Format.CSV
+                : BookImportService.Format.NDJSON;
+        return ResponseEntity.ok(bookImportService.importBooks(request.getInputStream(), format));
+    }
+}
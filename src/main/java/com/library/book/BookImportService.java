@@ -0,0 +1,369 @@
+package com.library.book;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.library.book.dto.BookDtos;
+import com.library.inventory.BookAvailabilityChangedEvent;
+import com.library.inventory.InventoryItemRepository;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 書目批次匯入
+ * 逐行解析 CSV / NDJSON（不將整個 body 載入記憶體），以 BookKeys 正規化後透過 COPY 寫入暫存表，
+ * 再以 set-based SQL upsert 到 books 並建立 book_copies
+ */
+@Service
+public class BookImportService {
+    private static final Logger log = LoggerFactory.getLogger(BookImportService.class);
+
+    public enum Format { CSV, NDJSON }
+
+    static final int MAX_REPORTED_ERRORS = 100;
+    private static final int COPY_BUFFER_CHARS = 64 * 1024;
+
+    private static final String CREATE_STAGING = """
+        CREATE TEMP TABLE book_import_staging (
+            line_no         BIGINT,
+            unique_book_key TEXT,
+            title           TEXT,
+            author          TEXT,
+            publish_year    INT,
+            category_id     BIGINT,
+            extra           TEXT,
+            branch_id       BIGINT,
+            quantity        INT
+        ) ON COMMIT DROP
+        """;
+
+    private static final String COPY_STAGING =
+        "COPY book_import_staging (line_no, unique_book_key, title, author, publish_year, category_id, extra, branch_id, quantity) " +
+        "FROM STDIN WITH (FORMAT csv)";
+
+    // 移除分類或分館不存在的資料列，並回報錯誤
+    private static final String DELETE_INVALID_REFERENCES = """
+        DELETE FROM book_import_staging s
+        WHERE NOT EXISTS (SELECT 1 FROM book_categories c WHERE c.id = s.category_id)
+           OR (s.branch_id IS NOT NULL AND NOT EXISTS (SELECT 1 FROM branches br WHERE br.id = s.branch_id))
+        RETURNING s.line_no,
+                  CASE WHEN NOT EXISTS (SELECT 1 FROM book_categories c WHERE c.id = s.category_id)
+                       THEN 'Category not found: ' || s.category_id
+                       ELSE 'Branch not found: ' || s.branch_id
+                  END AS message
+        """;
+
+    // 同一本書出現多次時以最後一行為準
+    private static final String UPSERT_BOOKS = """
+        INSERT INTO books (unique_book_key, title, author, publish_year, category_id, extra)
+        SELECT DISTINCT ON (unique_book_key) unique_book_key, title, author, publish_year, category_id, extra
+        FROM book_import_staging
+        ORDER BY unique_book_key, line_no DESC
+        ON CONFLICT (unique_book_key) DO UPDATE SET
+            title = EXCLUDED.title,
+            author = EXCLUDED.author,
+            publish_year = EXCLUDED.publish_year,
+            category_id = EXCLUDED.category_id,
+            extra = EXCLUDED.extra
+        """;
+
+    // 條碼與 BarcodeAllocator 共用 book_copy_barcode_seq：一次取得所需的區塊，第 n 筆副本使用 starts[n / blockSize] + n % blockSize
+    private static final String INSERT_COPIES = """
+        WITH blocks AS (
+            SELECT array_agg(start ORDER BY start) AS starts
+            FROM (SELECT nextval('book_copy_barcode_seq') AS start FROM generate_series(1, ?)) b
+        ),
+        copies AS (
+            SELECT s.unique_book_key, s.branch_id, row_number() OVER () - 1 AS n
+            FROM book_import_staging s
+            CROSS JOIN LATERAL generate_series(1, s.quantity)
+            WHERE s.branch_id IS NOT NULL AND s.quantity > 0
+        )
+        INSERT INTO book_copies (book_id, branch_id, status, barcode)
+        SELECT bk.id, c.branch_id, 'AVAILABLE',
+               'C' || lpad(v.seq::text, greatest(10, length(v.seq::text)), '0')
+        FROM copies c
+        CROSS JOIN blocks
+        CROSS JOIN LATERAL (SELECT blocks.starts[(c.n / ?)::int + 1] + c.n % ? AS seq) v
+        JOIN books bk ON bk.unique_book_key = c.unique_book_key
+        """;
+
+    // 新建立的副本累加到各分館館藏計數，回傳有變動的 bookId
+    private static final String ADD_AVAILABILITY = """
+        WITH added AS (
+            INSERT INTO book_branch_availability (book_id, branch_id, total, available)
+            SELECT bk.id, s.branch_id, SUM(s.quantity), SUM(s.quantity)
+            FROM book_import_staging s
+            JOIN books bk ON bk.unique_book_key = s.unique_book_key
+            WHERE s.branch_id IS NOT NULL AND s.quantity > 0
+            GROUP BY bk.id, s.branch_id
+            ORDER BY bk.id, s.branch_id
+            ON CONFLICT (book_id, branch_id) DO UPDATE SET
+                total = book_branch_availability.total + EXCLUDED.total,
+                available = book_branch_availability.available + EXCLUDED.available
+            RETURNING book_id
+        )
+        SELECT DISTINCT book_id FROM added
+        """;
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final InventoryItemRepository inventoryItemRepository;
+    private final ApplicationEventPublisher eventPublisher;
+
+    public BookImportService(DataSource dataSource, JdbcTemplate jdbcTemplate, ObjectMapper objectMapper,
+                             InventoryItemRepository inventoryItemRepository, ApplicationEventPublisher eventPublisher) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.inventoryItemRepository = inventoryItemRepository;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * 匯入書目；格式錯誤或分類/分館不存在的資料列會略過並回報，其餘資料列在同一個交易內寫入
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public BookDtos.ImportResponse importBooks(InputStream body, Format format) throws IOException, SQLException {
+        long startedAt = System.nanoTime();
+        List<BookDtos.ImportError> errors = new ArrayList<>();
+        long[] errorCount = {0};
+
+        // 1.建立暫存表並以 COPY 串流寫入
+        jdbcTemplate.execute(CREATE_STAGING);
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_STAGING);
+
+        long rowsRead = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            StringBuilder buffer = new StringBuilder(COPY_BUFFER_CHARS + 1024);
+            String line;
+            long lineNo = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNo++;
+                if (line.isBlank() || (lineNo == 1 && format == Format.CSV && isCsvHeader(line))) {
+                    continue;
+                }
+                rowsRead++;
+                try {
+                    BookDtos.ImportRow row = format == Format.CSV
+                            ? parseCsvRow(line)
+                            : parseNdjsonRow(line);
+                    appendStagingRow(buffer, lineNo, row);
+                } catch (IllegalArgumentException | IOException e) {
+                    addError(errors, errorCount, lineNo, e.getMessage());
+                }
+                if (buffer.length() >= COPY_BUFFER_CHARS) {
+                    flush(copyIn, buffer);
+                }
+            }
+            flush(copyIn, buffer);
+            copyIn.endCopy();
+        } finally {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        }
+
+        // 2.移除分類或分館不存在的資料列
+        jdbcTemplate.query(DELETE_INVALID_REFERENCES,
+                rs -> { addError(errors, errorCount, rs.getLong("line_no"), rs.getString("message")); });
+
+        Long rowsImported = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM book_import_staging", Long.class);
+
+        // 3.set-based upsert books
+        int booksUpserted = jdbcTemplate.update(UPSERT_BOOKS);
+
+        // 4.set-based 建立 book_copies
+        Long totalCopies = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(SUM(quantity), 0) FROM book_import_staging WHERE branch_id IS NOT NULL AND quantity > 0",
+                Long.class);
+        int copiesCreated = 0;
+        if (totalCopies != null && totalCopies > 0) {
+            long blockSize = inventoryItemRepository.barcodeBlockSize();
+            long blocks = (totalCopies + blockSize - 1) / blockSize;
+            copiesCreated = jdbcTemplate.update(INSERT_COPIES, blocks, blockSize, blockSize);
+            List<Long> changedBookIds = jdbcTemplate.queryForList(ADD_AVAILABILITY, Long.class);
+            eventPublisher.publishEvent(new BookAvailabilityChangedEvent(Set.copyOf(changedBookIds)));
+        }
+
+        long elapsedMillis = (System.nanoTime() - startedAt) / 1_000_000;
+        double rowsPerSecond = elapsedMillis == 0 ? rowsRead : rowsRead * 1000.0 / elapsedMillis;
+        log.info("Import finished: rows={}, imported={}, books={}, copies={}, errors={}, {} ms",
+                rowsRead, rowsImported, booksUpserted, copiesCreated, errorCount[0], elapsedMillis);
+
+        return new BookDtos.ImportResponse(
+                rowsRead,
+                rowsImported != null ? rowsImported : 0,
+                booksUpserted,
+                copiesCreated,
+                errorCount[0],
+                errors,
+                elapsedMillis,
+                rowsPerSecond
+        );
+    }
+
+    /**
+     * 驗證並正規化一筆資料（規則同 POST /api/books），以 CSV 格式附加到 COPY buffer
+     */
+    private void appendStagingRow(StringBuilder buffer, long lineNo, BookDtos.ImportRow row) {
+        String title = BookKeys.normalizeString(row.title());
+        String author = BookKeys.normalizeString(row.author());
+        String uniqueBookKey = BookKeys.generateUniqueBookKey(title, author, row.publishYear(), row.categoryId());
+        if ((row.branchId() == null) != (row.quantity() == null)) {
+            throw new IllegalArgumentException("branchId 與 quantity 必須同時提供");
+        }
+        if (row.quantity() != null && row.quantity() <= 0) {
+            throw new IllegalArgumentException("副本數量必須大於 0");
+        }
+
+        buffer.append(lineNo).append(',');
+        appendCsvField(buffer, uniqueBookKey).append(',');
+        appendCsvField(buffer, title).append(',');
+        appendCsvField(buffer, author).append(',');
+        buffer.append(row.publishYear()).append(',');
+        buffer.append(row.categoryId()).append(',');
+        appendCsvField(buffer, row.extra() != null ? row.extra() : "{}").append(',');
+        if (row.branchId() != null) {
+            buffer.append(row.branchId());
+        }
+        buffer.append(',');
+        if (row.quantity() != null) {
+            buffer.append(row.quantity());
+        }
+        buffer.append('\n');
+    }
+
+    private static StringBuilder appendCsvField(StringBuilder buffer, String value) {
+        buffer.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (ch == '"') {
+                buffer.append('"');
+            }
+            buffer.append(ch);
+        }
+        return buffer.append('"');
+    }
+
+    private static void flush(CopyIn copyIn, StringBuilder buffer) throws SQLException {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+        copyIn.writeToCopy(bytes, 0, bytes.length);
+        buffer.setLength(0);
+    }
+
+    private static void addError(List<BookDtos.ImportError> errors, long[] errorCount, long lineNo, String message) {
+        errorCount[0]++;
+        if (errors.size() < MAX_REPORTED_ERRORS) {
+            errors.add(new BookDtos.ImportError(lineNo, message));
+        }
+    }
+
+    static boolean isCsvHeader(String line) {
+        return line.trim().toLowerCase().startsWith("title,");
+    }
+
+    /**
+     * NDJSON 每行必須是一個 JSON 物件；null、陣列或純量視為該行錯誤
+     */
+    BookDtos.ImportRow parseNdjsonRow(String line) throws IOException {
+        JsonNode node = objectMapper.readTree(line);
+        if (node == null || !node.isObject()) {
+            throw new IllegalArgumentException("Expected a JSON object per line");
+        }
+        return objectMapper.treeToValue(node, BookDtos.ImportRow.class);
+    }
+
+    /**
+     * CSV 欄位順序：title,author,publish_year,category_id,extra,branch_id,quantity（後三欄可省略）
+     */
+    static BookDtos.ImportRow parseCsvRow(String line) {
+        List<String> fields = parseCsvLine(line);
+        if (fields.size() < 4) {
+            throw new IllegalArgumentException("Expected at least 4 columns: title,author,publish_year,category_id");
+        }
+        return new BookDtos.ImportRow(
+                fields.get(0),
+                fields.get(1),
+                Integer.valueOf(fields.get(2).trim()),
+                Long.valueOf(fields.get(3).trim()),
+                optional(fields, 4),
+                parseOptionalLong(optional(fields, 5)),
+                parseOptionalInt(optional(fields, 6))
+        );
+    }
+
+    /**
+     * 解析單行 CSV（支援雙引號與 "" 跳脫，不支援跨行欄位）
+     */
+    static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char ch = line.charAt(i);
+            if (quoted) {
+                if (ch == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(ch);
+                }
+            } else if (ch == '"') {
+                quoted = true;
+            } else if (ch == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(ch);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quoted field");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static String optional(List<String> fields, int index) {
+        if (index >= fields.size() || fields.get(index).isBlank()) {
+            return null;
+        }
+        return fields.get(index);
+    }
+
+    private static Long parseOptionalLong(String value) {
+        return value != null ? Long.valueOf(value.trim()) : null;
+    }
+
+    private static Integer parseOptionalInt(String value) {
+        return value != null ? Integer.valueOf(value.trim()) : null;
+    }
+}
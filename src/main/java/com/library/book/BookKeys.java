@@ -0,0 +1,33 @@
+package com.library.book;
+
+/**
+ * 書目正規化規則：新增書籍、匯入書目共用
+ */
+public final class BookKeys {
+
+    private BookKeys() {}
+
+    /**
+     * 標準化：trim + 小寫
+     */
+    public static String normalizeString(String input) {
+        if (input == null) {
+            throw new IllegalArgumentException("標題和作者不能為空");
+        }
+        String normalized = input.trim();
+        if (normalized.isEmpty()) {
+            throw new IllegalArgumentException("標題和作者不能為空白");
+        }
+        return normalized.toLowerCase();
+    }
+
+    /**
+     * 產生書的唯一識別
+     */
+    public static String generateUniqueBookKey(String title, String author, Integer publishYear, Long categoryId) {
+        if (title == null || author == null || publishYear == null || categoryId == null) {
+            throw new IllegalArgumentException("標題、作者、出版年份和類別ID都不能為空");
+        }
+        return String.format("%s|%s|%d|%d", title, author, publishYear, categoryId);
+    }
+}
@@ -2,25 +2,98 @@ package com.library.book;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
+import jakarta.persistence.QueryHint;
+
+import java.util.List;
+import java.util.stream.Stream;
+
 public interface BookRepository extends JpaRepository<Book, Long> {
 
-    @Query(value = "select id, unique_book_key, title, author, publish_year, category_id from books where (:title is null or title like concat('%', :title, '%')) " +
-            "and (:author is null or author like concat('%', :author, '%')) " +
-            "and (:year is null or publish_year = :year)", nativeQuery = true)
+    /**
+     * 搜尋條件（不分大小寫）：LOWER(title/author) LIKE 由 pg_trgm GIN 索引支援
+     */
+    String SEARCH_FILTER = """
+        (CAST(:title AS text) IS NULL OR LOWER(title) LIKE '%' || LOWER(CAST(:title AS text)) || '%')
+          AND (CAST(:author AS text) IS NULL OR LOWER(author) LIKE '%' || LOWER(CAST(:author AS text)) || '%')
+          AND (CAST(:year AS integer) IS NULL OR publish_year = CAST(:year AS integer))
+        """;
+
+    /**
+     * 相關度分數：書名/作者與關鍵字的 trigram 相似度加總
+     */
+    String SEARCH_SCORE = """
+        COALESCE(similarity(LOWER(title), LOWER(CAST(:title AS text))), 0)
+          + COALESCE(similarity(LOWER(author), LOWER(CAST(:author AS text))), 0)
+        """;
+
+    String SEARCH_SELECT = "SELECT id, unique_book_key, title, author, publish_year, category_id, "
+            + SEARCH_SCORE + " AS score FROM books WHERE " + SEARCH_FILTER;
+
+    /**
+     * 搜尋書目（Offset 分頁），結果依相關度排序，相同時依 id 排序
+     * 回傳欄位：[0] id, [1] unique_book_key, [2] title, [3] author, [4] publish_year, [5] category_id, [6] score
+     */
+    @Query(value = SEARCH_SELECT + " ORDER BY score DESC, id",
+            countQuery = "SELECT COUNT(*) FROM books WHERE " + SEARCH_FILTER,
+            nativeQuery = true)
     Page<Object[]> search(@Param("title") String title,
                           @Param("author") String author,
                           @Param("year") Integer year,
                           Pageable pageable);
 
-    @Query(value = "select count(*) from books where (:title is null or title like concat('%', :title, '%')) " +
-            "and (:author is null or author like concat('%', :author, '%')) " +
-            "and (:year is null or publish_year = :year)", nativeQuery = true)
+    /**
+     * 搜尋書目（Offset 分頁，不查總筆數）
+     */
+    @Query(value = SEARCH_SELECT + " ORDER BY score DESC, id", nativeQuery = true)
+    Slice<Object[]> searchSlice(@Param("title") String title,
+                                @Param("author") String author,
+                                @Param("year") Integer year,
+                                Pageable pageable);
+
+    /**
+     * 搜尋書目（Keyset 分頁）：從 (afterScore, afterId) 之後開始取 limit 筆
+     * afterScore 為 null 時從第一筆開始
+     * 注意：排序鍵是計算出來的相似度分數，沒有索引可以直接定位，每一頁仍要對所有符合條件的書目計算分數再排序；
+     * cursor 只省去 COUNT 與 OFFSET 跳過的筆數，深分頁不會因此變便宜（沒有關鍵字時改用 searchAfterById）
+     */
+    @Query(value = "SELECT * FROM (" + SEARCH_SELECT + ") s " +
+            "WHERE (CAST(:afterScore AS real) IS NULL " +
+            "OR s.score < CAST(:afterScore AS real) " +
+            "OR (s.score = CAST(:afterScore AS real) AND s.id > :afterId)) " +
+            "ORDER BY s.score DESC, s.id " +
+            "LIMIT :limit", nativeQuery = true)
+    List<Object[]> searchAfter(@Param("title") String title,
+                               @Param("author") String author,
+                               @Param("year") Integer year,
+                               @Param("afterScore") Float afterScore,
+                               @Param("afterId") Long afterId,
+                               @Param("limit") int limit);
+
+    /**
+     * 沒有書名/作者關鍵字時的 Keyset 分頁：分數固定為 0，排序等同於 id，直接以主鍵索引定位 afterId 之後的資料
+     * 回傳欄位與 searchAfter 相同，cursor 可以互通
+     */
+    @Query(value = """
+        SELECT id, unique_book_key, title, author, publish_year, category_id, CAST(0 AS real) AS score
+        FROM books
+        WHERE id > COALESCE(CAST(:afterId AS bigint), 0)
+          AND (CAST(:year AS integer) IS NULL OR publish_year = CAST(:year AS integer))
+        ORDER BY id
+        LIMIT :limit
+        """, nativeQuery = true)
+    List<Object[]> searchAfterById(@Param("year") Integer year,
+                                   @Param("afterId") Long afterId,
+                                   @Param("limit") int limit);
+
+    @Query(value = "SELECT COUNT(*) FROM books WHERE " + SEARCH_FILTER, nativeQuery = true)
     long countSearch(@Param("title") String title,
                      @Param("author") String author,
                      @Param("year") Integer year);
@@ -46,6 +119,12 @@ public interface BookRepository extends JpaRepository<Book, Long> {
                     @Param("publishYear") Integer publishYear,
                     @Param("categoryId") Long categoryId,
                     @Param("extra") String extra);
-}
-
 
+    /**
+     * 匯出用：依 id 順序串流所有書目（需在交易內使用，fetch size 讓 driver 分批取回）
+     * 回傳欄位：[0] id, [1] title, [2] author, [3] publishYear, [4] categoryId, [5] extra
+     */
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+    @Query(value = "SELECT id, title, author, publish_year, category_id, extra FROM books ORDER BY id", nativeQuery = true)
+    Stream<Object[]> streamAllForExport();
+}
@@ -45,10 +45,11 @@ public class BookDtos {
 
     public record SearchResponse(
             List<BookAvailability> books,
-            int page,
+            Integer page,        // cursor 模式為 null
             int size,
-            long total,
-            int totalPages
+            Long total,          // withTotal=false 或 cursor 模式為 null
+            Integer totalPages,  // withTotal=false 或 cursor 模式為 null
+            String nextCursor    // 沒有下一頁時為 null
     ) {}
 
     public record BranchAvailability(
@@ -58,6 +59,33 @@ public class BookDtos {
             int available
     ) {}
 
+    // 書目匯入相關 DTOs
+    public record ImportRow(
+            String title,
+            String author,
+            Integer publishYear,
+            Long categoryId,
+            String extra,
+            Long branchId,      // 可選：建立副本的分館
+            Integer quantity    // 可選：副本數量
+    ) {}
+
+    public record ImportError(
+            long line,
+            String message
+    ) {}
+
+    public record ImportResponse(
+            long rowsRead,
+            long rowsImported,
+            long booksUpserted,
+            long copiesCreated,
+            long errorCount,
+            List<ImportError> errors,   // 最多回傳前 100 筆
+            long elapsedMillis,
+            double rowsPerSecond
+    ) {}
+
     public record UpdateBookRequest(
             String title,
             String author,
@@ -1,17 +1,45 @@
 package com.library.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+
 /**
  * RestTemplate Bean
+ * 使用 JDK HttpClient（在 virtual thread 上阻塞不會佔住 carrier thread）；virtual thread 模式下 HttpClient 內部工作也交給 virtual thread
+ * HttpClient 會重用 keep-alive 連線（連線池），並設定連線 / 讀取逾時，外部 API 變慢時不會無限期佔住請求執行緒
  */
 @Configuration
 public class RestTemplateConfig {
     
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public RestTemplate restTemplate(@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+                                     @Value("${library.external-api.connect-timeout-ms:2000}") long connectTimeoutMillis,
+                                     @Value("${library.external-api.read-timeout-ms:3000}") long readTimeoutMillis) {
+        return create(virtualThreads, Duration.ofMillis(connectTimeoutMillis), Duration.ofMillis(readTimeoutMillis));
+    }
+
+    public static RestTemplate create(boolean virtualThreads, Duration connectTimeout, Duration readTimeout) {
+        return new RestTemplate(requestFactory(virtualThreads, connectTimeout, readTimeout));
+    }
+
+    /**
+     * 帶連線 / 讀取逾時的 request factory，RestTemplate 與 RestClient 共用
+     */
+    public static JdkClientHttpRequestFactory requestFactory(boolean virtualThreads, Duration connectTimeout, Duration readTimeout) {
+        HttpClient.Builder httpClient = HttpClient.newBuilder()
+                .connectTimeout(connectTimeout);
+        if (virtualThreads) {
+            httpClient.executor(Executors.newVirtualThreadPerTaskExecutor());
+        }
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient.build());
+        requestFactory.setReadTimeout(readTimeout);
+        return requestFactory;
     }
 }
@@ -2,6 +2,7 @@ package com.library.config;
 
 import com.library.auth.JwtAuthenticationFilter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
@@ -20,6 +21,10 @@ public class SecurityConfig {
     @Autowired
     private JwtAuthenticationFilter jwtAuthenticationFilter;
 
+    // Actuator 使用獨立的管理埠（不對外開放），Prometheus 只能從該埠抓取
+    @Value("${management.server.port:-1}")
+    private int managementPort;
+
     @Bean
     public PasswordEncoder passwordEncoder() {
         return new BCryptPasswordEncoder();
@@ -34,13 +39,22 @@ public class SecurityConfig {
             .authorizeHttpRequests(authz -> authz
                 // 註冊用API，對外開放
                 .requestMatchers("/api/auth/login", "/api/auth/register").permitAll()
+
+                // Health check
+                .requestMatchers("/actuator/health").permitAll()
+
+                // Prometheus scrape：只允許來自管理埠的請求，其餘 actuator 端點需要驗證
+                .requestMatchers(request -> request.getLocalPort() == managementPort
+                        && "/actuator/prometheus".equals(request.getRequestURI())).permitAll()
                 
                 // 需要JWT驗證身份的End point
                 .requestMatchers(HttpMethod.POST, "/api/books").hasRole("Librarian")
+                .requestMatchers(HttpMethod.POST, "/api/books/import").hasRole("Librarian")
                 .requestMatchers(HttpMethod.PATCH, "/api/books/**").hasRole("Librarian")
                 .requestMatchers(HttpMethod.DELETE, "/api/books/copies/**").hasRole("Librarian")
                 .requestMatchers("/api/books/search").hasAnyRole("Member", "Librarian")
-                .requestMatchers("/api/loans/borrow", "/api/loans/return").hasAnyRole("Member", "Librarian")
+                .requestMatchers("/api/loans/borrow", "/api/loans/borrow-by-title", "/api/loans/return").hasAnyRole("Member", "Librarian")
+                .requestMatchers(HttpMethod.GET, "/api/export/**").hasRole("Librarian")
                 
 
                 .requestMatchers(HttpMethod.GET, "/api/branches").hasAnyRole("Member", "Librarian")
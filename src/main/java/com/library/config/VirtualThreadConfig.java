@@ -0,0 +1,50 @@
+package com.library.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+
+/**
+ * Virtual thread 模式（spring.threads.virtual.enabled=true）
+ * Spring Boot 會讓 Tomcat、@Scheduled 排程改用 virtual thread；這裡額外以 Semaphore 保護連線池
+ */
+@Configuration
+public class VirtualThreadConfig {
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadConfig.class);
+
+    @Bean
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    public static BeanPostProcessor connectionLimitingDataSourcePostProcessor(Environment environment,
+                                                                             ObjectProvider<MeterRegistry> meterRegistry) {
+        // 預設與 Hikari 連線池大小相同，等待時間與 Hikari connection-timeout 相同
+        int poolSize = environment.getProperty("spring.datasource.hikari.maximum-pool-size", Integer.class, 10);
+        int permits = environment.getProperty("library.datasource.max-concurrent-connections", Integer.class, poolSize);
+        long timeoutMillis = environment.getProperty("spring.datasource.hikari.connection-timeout", Long.class, 30000L);
+
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof ConnectionLimitingDataSource)) {
+                    ConnectionLimitingDataSource limited = new ConnectionLimitingDataSource(dataSource, permits, timeoutMillis);
+                    meterRegistry.ifAvailable(registry -> Gauge.builder("library.datasource.permits.available", limited,
+                                    ConnectionLimitingDataSource::availablePermits)
+                            .description("Database connection permits not currently held")
+                            .register(registry));
+                    log.info("DataSource '{}' limited to {} concurrent connections", beanName, permits);
+                    return limited;
+                }
+                return bean;
+            }
+        };
+    }
+}
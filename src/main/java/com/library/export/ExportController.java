@@ -0,0 +1,54 @@
+package com.library.export;
+
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+
+/**
+ * 匯出 API：GET /api/export/{books|copies|loans}?format=ndjson|csv
+ */
+@RestController
+@RequestMapping("/api/export")
+public class ExportController {
+    private static final Logger log = LoggerFactory.getLogger(ExportController.class);
+
+    private final ExportService exportService;
+
+    public ExportController(ExportService exportService) {
+        this.exportService = exportService;
+    }
+
+    @GetMapping("/{dataset}")
+    public void export(@PathVariable String dataset,
+                       @RequestParam(defaultValue = "ndjson") String format,
+                       HttpServletResponse response) throws IOException {
+        ExportService.Dataset exportDataset = parse(ExportService.Dataset.class, dataset, "dataset");
+        ExportService.Format exportFormat = parse(ExportService.Format.class, format, "format");
+
+        String extension = exportFormat == ExportService.Format.CSV ? "csv" : "ndjson";
+        response.setContentType(exportFormat == ExportService.Format.CSV ? "text/csv;charset=UTF-8" : "application/x-ndjson");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=\"" + exportDataset.name().toLowerCase() + "." + extension + "\"");
+
+        long rows = exportService.export(exportDataset, exportFormat, response.getOutputStream());
+        log.info("Exported {} ({}): {} rows", exportDataset, exportFormat, rows);
+    }
+
+    private static <E extends Enum<E>> E parse(Class<E> type, String value, String name) {
+        try {
+            return Enum.valueOf(type, value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unsupported " + name + ": " + value);
+        }
+    }
+}
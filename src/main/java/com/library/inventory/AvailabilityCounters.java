@@ -0,0 +1,126 @@
+package com.library.inventory;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 維護 book_branch_availability 館藏計數
+ * 必須在修改 book_copies 的同一個交易內呼叫，計數與副本狀態一起 commit 或 rollback
+ * 借出 / 歸還 / 刪除的增減量先記在交易內，commit 前（beforeCommit）才依序鎖住計數並一次更新，
+ * 計數的 row lock 只持有到 commit 為止，同一書目、分館的借還書不會在整段交易期間排隊等同一筆計數
+ * 每次變動都會發布 BookAvailabilityChangedEvent（commit 後才會通知快取失效）
+ */
+@Component
+public class AvailabilityCounters {
+
+    private final InventoryItemRepository inventoryItemRepository;
+    private final ApplicationEventPublisher eventPublisher;
+
+    public AvailabilityCounters(InventoryItemRepository inventoryItemRepository,
+                                ApplicationEventPublisher eventPublisher) {
+        this.inventoryItemRepository = inventoryItemRepository;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * 副本借出：可借數量 -1
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void copiesBorrowed(Collection<Long> copyIds) {
+        adjust(copyIds, -1);
+    }
+
+    /**
+     * 副本歸還：可借數量 +1
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void copiesReturned(Collection<Long> copyIds) {
+        adjust(copyIds, 1);
+    }
+
+    /**
+     * 可借的副本被刪除（soft delete）：可借數量 -1，總數不變（與 book_copies 筆數一致）
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void availableCopyRemoved(Long copyId) {
+        adjust(List.of(copyId), -1);
+    }
+
+    /**
+     * 新增副本：branchIds 每個元素代表一本新的 AVAILABLE 副本
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void copiesAdded(Long bookId, List<Long> branchIds) {
+        if (branchIds.isEmpty()) {
+            return;
+        }
+        inventoryItemRepository.addCopiesToAvailability(bookId, branchIds.toArray(Long[]::new));
+        eventPublisher.publishEvent(new BookAvailabilityChangedEvent(Set.of(bookId)));
+    }
+
+    /**
+     * 記下交易內的增減量，同一交易的多次呼叫合併為 commit 前的一次更新
+     */
+    private void adjust(Collection<Long> copyIds, int delta) {
+        if (copyIds.isEmpty()) {
+            return;
+        }
+        PendingAdjustments pending = (PendingAdjustments) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            pending = new PendingAdjustments();
+            TransactionSynchronizationManager.bindResource(this, pending);
+            TransactionSynchronizationManager.registerSynchronization(pending);
+        }
+        for (Long copyId : copyIds) {
+            pending.deltaByCopy.merge(copyId, delta, Integer::sum);
+        }
+    }
+
+    /**
+     * 交易內尚未寫入的增減量（copyId -> 淨增減量）
+     */
+    private final class PendingAdjustments implements TransactionSynchronization {
+        private final Map<Long, Integer> deltaByCopy = new LinkedHashMap<>();
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            Map<Integer, List<Long>> copiesByDelta = new LinkedHashMap<>();
+            deltaByCopy.forEach((copyId, delta) -> {
+                if (delta != 0) {
+                    copiesByDelta.computeIfAbsent(delta, d -> new ArrayList<>()).add(copyId);
+                }
+            });
+            if (copiesByDelta.isEmpty()) {
+                return;
+            }
+
+            // 一次依 (book_id, branch_id) 順序鎖住所有相關計數，再依增減量分組更新
+            List<Long> copyIds = new ArrayList<>();
+            copiesByDelta.values().forEach(copyIds::addAll);
+            inventoryItemRepository.lockAvailabilityForCopies(copyIds);
+            Set<Long> bookIds = new HashSet<>();
+            copiesByDelta.forEach((delta, ids) ->
+                    bookIds.addAll(inventoryItemRepository.adjustAvailableForCopies(ids, delta)));
+            if (!bookIds.isEmpty()) {
+                eventPublisher.publishEvent(new BookAvailabilityChangedEvent(Set.copyOf(bookIds)));
+            }
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(AvailabilityCounters.this);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.library.inventory;
+
+import com.library.scheduling.JobLeaseService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 館藏計數對帳
+ * 定期以 book_copies 重新計算 book_branch_availability，修正缺少或不一致的計數（例如直接以 SQL 修改副本狀態）
+ * 依 book id 範圍分批，每批一個短交易：先依序鎖住該範圍的計數，再以同一交易內的最新副本狀態覆寫
+ */
+@Component
+public class AvailabilityReconciliationJob {
+    private static final Logger log = LoggerFactory.getLogger(AvailabilityReconciliationJob.class);
+    static final String JOB_NAME = "availability-reconciliation";
+    private static final Duration LOCK_AT_MOST_FOR = Duration.ofMinutes(30);
+    private static final Duration LOCK_AT_LEAST_FOR = Duration.ofMinutes(1);
+
+    private final InventoryItemRepository inventoryItemRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final JobLeaseService jobLeaseService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int batchSize;
+    private final Counter reconciledCounter;
+
+    public AvailabilityReconciliationJob(InventoryItemRepository inventoryItemRepository,
+                                         TransactionTemplate transactionTemplate,
+                                         JobLeaseService jobLeaseService,
+                                         ApplicationEventPublisher eventPublisher,
+                                         MeterRegistry meterRegistry,
+                                         @Value("${availability.reconcile.batch-size:1000}") int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("availability.reconcile.batch-size must be positive");
+        }
+        this.inventoryItemRepository = inventoryItemRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.jobLeaseService = jobLeaseService;
+        this.eventPublisher = eventPublisher;
+        this.batchSize = batchSize;
+        this.reconciledCounter = Counter.builder("library.availability.reconciled")
+            .description("Availability counters corrected by reconciliation")
+            .register(meterRegistry);
+    }
+
+    @Scheduled(initialDelayString = "${availability.reconcile.interval-ms:3600000}",
+               fixedDelayString = "${availability.reconcile.interval-ms:3600000}")
+    public void reconcile() {
+        try {
+            jobLeaseService.runExclusively(JOB_NAME, LOCK_AT_MOST_FOR, LOCK_AT_LEAST_FOR, this::reconcileAll);
+        } catch (Exception e) {
+            log.error("Availability reconciliation failed", e);
+        }
+    }
+
+    /**
+     * 逐批對帳 [1, 最大 book id]，回傳修正的計數筆數
+     */
+    int reconcileAll() {
+        long maxBookId = inventoryItemRepository.maxBookIdWithCopies();
+        int corrected = 0;
+        for (long from = 1; from <= maxBookId; from += batchSize) {
+            long fromBookId = from;
+            long toBookId = from + batchSize;
+            Integer fixed = transactionTemplate.execute(status -> {
+                inventoryItemRepository.lockAvailabilityRange(fromBookId, toBookId);
+                List<Long> bookIds = inventoryItemRepository.reconcileAvailabilityRange(fromBookId, toBookId);
+                if (!bookIds.isEmpty()) {
+                    eventPublisher.publishEvent(new BookAvailabilityChangedEvent(Set.copyOf(bookIds)));
+                }
+                return bookIds.size();
+            });
+            corrected += fixed != null ? fixed : 0;
+        }
+        reconciledCounter.increment(corrected);
+        if (corrected > 0) {
+            log.info("Availability reconciliation corrected {} counters", corrected);
+        }
+        return corrected;
+    }
+}
@@ -0,0 +1,86 @@
+package com.library.inventory;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 副本條碼配置器（hi/lo）
+ * 每次 nextval('book_copy_barcode_seq') 取得一個區塊，區塊內的序號在記憶體中逐一發放，
+ * 序號不會重複，批次建立副本時不需每筆存取資料庫，也不會因條碼重複而失敗
+ * 條碼格式：C + 10 位數序號，例如 C0000000101
+ * 取得區塊時會查詢資料庫，以 ReentrantLock 保護而非 synchronized，避免 virtual thread 在等待資料庫時被固定在 carrier thread 上
+ */
+@Component
+public class BarcodeAllocator {
+
+    static final String PREFIX = "C";
+    private static final int DIGITS = 10;
+
+    private final InventoryItemRepository inventoryItemRepository;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private long blockSize;
+    private long next;
+    private long blockEnd;
+
+    public BarcodeAllocator(InventoryItemRepository inventoryItemRepository) {
+        this.inventoryItemRepository = inventoryItemRepository;
+    }
+
+    public String allocate() {
+        return allocate(1).get(0);
+    }
+
+    /**
+     * 配置 count 個條碼；目前區塊不足時以單次查詢取得所需的區塊
+     */
+    public List<String> allocate(int count) {
+        lock.lock();
+        try {
+            List<String> barcodes = new ArrayList<>(count);
+            while (barcodes.size() < count && next < blockEnd) {
+                barcodes.add(format(next++));
+            }
+
+            int missing = count - barcodes.size();
+            if (missing > 0) {
+                long size = blockSize();
+                int blocks = (int) ((missing + size - 1) / size);
+                for (Long blockStart : inventoryItemRepository.allocateBarcodeBlocks(blocks)) {
+                    next = blockStart;
+                    blockEnd = blockStart + size;
+                    while (barcodes.size() < count && next < blockEnd) {
+                        barcodes.add(format(next++));
+                    }
+                }
+            }
+            return barcodes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long blockSize() {
+        if (blockSize == 0) {
+            Long size = inventoryItemRepository.barcodeBlockSize();
+            if (size == null || size < 1) {
+                throw new IllegalStateException("Sequence book_copy_barcode_seq not found");
+            }
+            blockSize = size;
+        }
+        return blockSize;
+    }
+
+    static String format(long value) {
+        String digits = Long.toString(value);
+        StringBuilder sb = new StringBuilder(PREFIX.length() + Math.max(DIGITS, digits.length()));
+        sb.append(PREFIX);
+        for (int i = digits.length(); i < DIGITS; i++) {
+            sb.append('0');
+        }
+        return sb.append(digits).toString();
+    }
+}
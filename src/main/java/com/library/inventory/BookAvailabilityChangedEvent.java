@@ -0,0 +1,9 @@
+package com.library.inventory;
+
+import java.util.Set;
+
+/**
+ * 書目館藏計數（book_branch_availability）有變動時發布，交易 commit 後由快取等 listener 處理
+ */
+public record BookAvailabilityChangedEvent(Set<Long> bookIds) {
+}
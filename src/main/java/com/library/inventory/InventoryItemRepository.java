@@ -3,9 +3,18 @@ package com.library.inventory;
 import com.library.book.Book;
 import com.library.branch.LibraryBranch;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import jakarta.persistence.QueryHint;
+
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface InventoryItemRepository extends JpaRepository<InventoryItem, Long> {
     List<InventoryItem> findByBook(Book book);
@@ -16,6 +25,150 @@ public interface InventoryItemRepository extends JpaRepository<InventoryItem, Lo
      * 通過條碼查找副本
      */
     Optional<InventoryItem> findByBarcode(String barcode);
-}
 
+    /**
+     * 批次將條碼轉成副本ID
+     * 回傳欄位：[0] barcode, [1] copyId
+     */
+    @Query("SELECT bc.barcode, bc.id FROM InventoryItem bc WHERE bc.barcode IN :barcodes")
+    List<Object[]> findIdsByBarcodeIn(@Param("barcodes") Collection<String> barcodes);
+
+    /**
+     * 依書目讀取各分館館藏計數（book_branch_availability 主鍵查詢）
+     * 回傳欄位：[0] bookId, [1] branchId, [2] branchName, [3] total, [4] available
+     */
+    @Query(value = """
+        SELECT a.book_id, a.branch_id, br.branch_name, a.total, a.available
+        FROM book_branch_availability a
+        JOIN branches br ON br.id = a.branch_id
+        WHERE a.book_id IN (:bookIds)
+        ORDER BY a.book_id, a.branch_id
+        """, nativeQuery = true)
+    List<Object[]> findAvailabilityByBookIds(@Param("bookIds") Collection<Long> bookIds);
+
+    /**
+     * 依 (book_id, branch_id) 順序鎖住這些副本所屬的館藏計數，避免多筆計數以不同順序更新時互相 deadlock
+     */
+    @Query(value = """
+        SELECT COUNT(*) FROM (
+            SELECT 1 FROM book_branch_availability a
+            WHERE (a.book_id, a.branch_id) IN (SELECT bc.book_id, bc.branch_id FROM book_copies bc WHERE bc.id IN (:copyIds))
+            ORDER BY a.book_id, a.branch_id
+            FOR UPDATE
+        ) locked
+        """, nativeQuery = true)
+    long lockAvailabilityForCopies(@Param("copyIds") Collection<Long> copyIds);
+
+    /**
+     * 依副本所屬的書目、分館調整可借數量（delta 為每本副本的增減量），回傳有變動的 bookId
+     */
+    @Transactional
+    @Query(value = """
+        WITH adjusted AS (
+            UPDATE book_branch_availability a
+            SET available = a.available + c.copies * CAST(:delta AS int)
+            FROM (SELECT bc.book_id, bc.branch_id, COUNT(*) AS copies
+                  FROM book_copies bc
+                  WHERE bc.id IN (:copyIds)
+                  GROUP BY bc.book_id, bc.branch_id) c
+            WHERE a.book_id = c.book_id AND a.branch_id = c.branch_id
+            RETURNING a.book_id
+        )
+        SELECT DISTINCT book_id FROM adjusted
+        """, nativeQuery = true)
+    List<Long> adjustAvailableForCopies(@Param("copyIds") Collection<Long> copyIds, @Param("delta") int delta);
+
+    /**
+     * 新增副本後累加館藏計數；branchIds 以 bigint[] 綁定，每個元素代表一本新的 AVAILABLE 副本
+     */
+    @Modifying
+    @Query(value = """
+        INSERT INTO book_branch_availability (book_id, branch_id, total, available)
+        SELECT :bookId, c.branch_id, COUNT(*), COUNT(*)
+        FROM unnest(CAST(:branchIds AS bigint[])) AS c(branch_id)
+        GROUP BY c.branch_id
+        ORDER BY c.branch_id
+        ON CONFLICT (book_id, branch_id) DO UPDATE SET
+            total = book_branch_availability.total + EXCLUDED.total,
+            available = book_branch_availability.available + EXCLUDED.available
+        """, nativeQuery = true)
+    int addCopiesToAvailability(@Param("bookId") Long bookId, @Param("branchIds") Long[] branchIds);
+
+    /**
+     * 對帳用：依 (book_id, branch_id) 順序鎖住 [fromBookId, toBookId) 範圍內的館藏計數
+     */
+    @Query(value = """
+        SELECT COUNT(*) FROM (
+            SELECT 1 FROM book_branch_availability
+            WHERE book_id >= :fromBookId AND book_id < :toBookId
+            ORDER BY book_id, branch_id
+            FOR UPDATE
+        ) locked
+        """, nativeQuery = true)
+    long lockAvailabilityRange(@Param("fromBookId") long fromBookId, @Param("toBookId") long toBookId);
 
+    /**
+     * 對帳用：以 book_copies 重新計算 [fromBookId, toBookId) 範圍內的館藏計數，只寫入缺少或不一致的資料列
+     * 回傳每一筆修正的計數所屬的 bookId
+     */
+    @Transactional
+    @Query(value = """
+        WITH fixed AS (
+            INSERT INTO book_branch_availability (book_id, branch_id, total, available)
+            SELECT bc.book_id, bc.branch_id, COUNT(*), COUNT(*) FILTER (WHERE bc.status = 'AVAILABLE')
+            FROM book_copies bc
+            WHERE bc.book_id >= :fromBookId AND bc.book_id < :toBookId
+            GROUP BY bc.book_id, bc.branch_id
+            ORDER BY bc.book_id, bc.branch_id
+            ON CONFLICT (book_id, branch_id) DO UPDATE SET
+                total = EXCLUDED.total,
+                available = EXCLUDED.available
+            WHERE book_branch_availability.total <> EXCLUDED.total
+               OR book_branch_availability.available <> EXCLUDED.available
+            RETURNING book_id
+        )
+        SELECT book_id FROM fixed
+        """, nativeQuery = true)
+    List<Long> reconcileAvailabilityRange(@Param("fromBookId") long fromBookId, @Param("toBookId") long toBookId);
+
+    /**
+     * 對帳用：目前最大的書目 id
+     */
+    @Query(value = "SELECT COALESCE(MAX(book_id), 0) FROM book_copies", nativeQuery = true)
+    long maxBookIdWithCopies();
+
+    /**
+     * 批次建立副本（單一 multi-row INSERT）
+     * branchIds、barcodes 以陣列綁定且一一對應，每組建立一筆 AVAILABLE 副本
+     */
+    @Modifying
+    @Query(value = """
+        INSERT INTO book_copies (book_id, branch_id, status, barcode)
+        SELECT :bookId, c.branch_id, 'AVAILABLE', c.barcode
+        FROM unnest(CAST(:branchIds AS bigint[]),
+                    CAST(:barcodes AS text[])) AS c(branch_id, barcode)
+        """, nativeQuery = true)
+    int insertCopies(@Param("bookId") Long bookId,
+                     @Param("branchIds") Long[] branchIds,
+                     @Param("barcodes") String[] barcodes);
+
+    /**
+     * 預先配置條碼區塊：回傳 count 個區塊的起始序號
+     */
+    @Query(value = "SELECT nextval('book_copy_barcode_seq') FROM generate_series(1, :count)", nativeQuery = true)
+    List<Long> allocateBarcodeBlocks(@Param("count") int count);
+
+    /**
+     * 條碼區塊大小（即 book_copy_barcode_seq 的 INCREMENT BY）
+     */
+    @Query(value = "SELECT increment_by FROM pg_sequences WHERE sequencename = 'book_copy_barcode_seq'", nativeQuery = true)
+    Long barcodeBlockSize();
+
+    /**
+     * 匯出用：依 id 順序串流所有副本（需在交易內使用，fetch size 讓 driver 分批取回）
+     * 回傳欄位：[0] id, [1] bookId, [2] branchId, [3] status, [4] barcode
+     */
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+    @Query(value = "SELECT id, book_id, branch_id, status, barcode FROM book_copies ORDER BY id", nativeQuery = true)
+    Stream<Object[]> streamAllForExport();
+}
@@ -1,34 +1,103 @@
 package com.library.loan;
 
+import com.library.notification.Notification;
+import com.library.notification.NotificationDispatcher;
+import com.library.scheduling.JobLeaseService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * 到期前通知
+ * 已通知過的借閱記錄記在 loan_notifications，每次只處理新進入通知範圍的在借記錄，並以固定大小的 chunk 分批處理
+ * 每個 chunk 的領取與排入 outbox 在同一個交易內完成，實際送出由 NotificationDispatcher 背景處理
+ * 多節點部署時透過 JobLeaseService 確保每個週期只有一個節點處理同一個 shard
+ */
 @Component
 public class DueNotificationScheduler {
+    private static final Logger log = LoggerFactory.getLogger(DueNotificationScheduler.class);
+    static final String KIND_DUE_SOON = "DUE_SOON";
+    static final String JOB_NAME = "due-soon-notification";
+    private static final Duration LOCK_AT_MOST_FOR = Duration.ofMinutes(10);
+
     private final LoanRepository loanRepository;
-    
-    @Value("${overdue.check.interval}")
-    private int checkIntervalMinutes;
+    private final NotificationDispatcher notificationDispatcher;
+    private final TransactionTemplate transactionTemplate;
+    private final JobLeaseService jobLeaseService;
+    private final Duration lockAtLeastFor;
+    private final int dueSoonDays;
+    private final int chunkSize;
 
-    public DueNotificationScheduler(LoanRepository loanRepository) {
+    public DueNotificationScheduler(LoanRepository loanRepository,
+                                    NotificationDispatcher notificationDispatcher,
+                                    TransactionTemplate transactionTemplate,
+                                    JobLeaseService jobLeaseService,
+                                    @Value("${overdue.check.interval:1}") int checkIntervalMinutes,
+                                    @Value("${notification.due-soon.days:5}") int dueSoonDays,
+                                    @Value("${notification.chunk-size:500}") int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("notification.chunk-size must be positive");
+        }
         this.loanRepository = loanRepository;
+        this.notificationDispatcher = notificationDispatcher;
+        this.transactionTemplate = transactionTemplate;
+        this.jobLeaseService = jobLeaseService;
+        // 租約保留到下個週期前，避免其他節點在同一個週期內重複執行
+        this.lockAtLeastFor = Duration.ofMinutes(checkIntervalMinutes).minusSeconds(5);
+        this.dueSoonDays = dueSoonDays;
+        this.chunkSize = chunkSize;
     }
 
     // 使用環境變數設定檢查間隔（預設1分鐘）
     @Scheduled(fixedRateString = "#{${overdue.check.interval} * 60 * 1000}")
     public void notifyDueSoon() {
-        LocalDate target = LocalDate.now().plusDays(5);
-        List<Loan> loans = loanRepository.findByDueDate(target);
-        for (Loan loan : loans) {
-            if (loan.getReturnedDate() == null) {
-                System.out.println("[Notify] User " + loan.getUser().getUsername() + " - loan " + loan.getId() + " due on " + loan.getDueDate());
+        jobLeaseService.runSharded(JOB_NAME, LOCK_AT_MOST_FOR, lockAtLeastFor, this::notifyDueSoon);
+    }
+
+    /**
+     * 處理單一 shard（loan id % shards = shard）
+     */
+    void notifyDueSoon(int shard) {
+        int shards = jobLeaseService.shards();
+        // 通知範圍：今天到 N 天後（含）到期；停機期間錯過的記錄會在下次執行時補發
+        LocalDate today = LocalDate.now();
+        LocalDate until = today.plusDays(dueSoonDays + 1);
+
+        long afterId = 0;
+        int notified = 0;
+        while (true) {
+            long from = afterId;
+            List<Object[]> chunk = transactionTemplate.execute(status -> {
+                List<Object[]> claimed = loanRepository.claimNotifications(KIND_DUE_SOON, today, until, from, shards, shard, chunkSize);
+                List<Notification> notifications = new ArrayList<>(claimed.size());
+                for (Object[] row : claimed) {
+                    notifications.add(new Notification(
+                            ((Number) row[0]).longValue(),
+                            KIND_DUE_SOON,
+                            (String) row[1],
+                            "Loan " + row[0] + " is due on " + row[2],
+                            KIND_DUE_SOON + ":" + row[0]));
+                }
+                notificationDispatcher.dispatchAll(notifications);
+                return claimed;
+            });
+            notified += chunk.size();
+            if (chunk.size() < chunkSize) {
+                break;
             }
+            afterId = ((Number) chunk.get(chunk.size() - 1)[0]).longValue();
+        }
+
+        if (notified > 0) {
+            log.info("{} due-soon notifications queued (shard {}/{})", notified, shard, shards);
         }
     }
 }
-
-
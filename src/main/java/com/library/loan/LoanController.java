@@ -25,6 +25,16 @@ public class LoanController {
         return ResponseEntity.status(201).body(response);
     }
 
+    @PostMapping("/borrow-by-title")
+    public ResponseEntity<BorrowDtos.BorrowResponse> borrowByTitle(@Valid @RequestBody BorrowDtos.BorrowByTitleRequest request,
+                                                                  Authentication authentication) {
+        // 從 JWT token 取得使用者ID
+        Long userId = Long.parseLong(authentication.getName());
+        
+        BorrowDtos.BorrowResponse response = loanService.borrowByTitle(userId, request);
+        return ResponseEntity.status(201).body(response);
+    }
+
     @PostMapping("/return")
     public ResponseEntity<BorrowDtos.ReturnResponse> returnBooks(@Valid @RequestBody BorrowDtos.ReturnRequest request,
                                                                 Authentication authentication) {
@@ -40,11 +50,6 @@ public class LoanController {
         Loan loan = loanService.returnBook(loanId);
         return ResponseEntity.ok(java.util.Map.of("returnedDate", loan.getReturnedDate()));
     }
-
-    @GetMapping("/debug/copies")
-    public ResponseEntity<?> debugCopies() {
-        return ResponseEntity.ok(loanService.getAllCopies());
-    }
 }
 
 
@@ -6,25 +6,95 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
+import org.springframework.transaction.annotation.Transactional;
+
 import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
 
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface LoanRepository extends JpaRepository<Loan, Long> {
     List<Loan> findByUserAndReturnedDateIsNull(User user);
 
     List<Loan> findByDueDate(LocalDate dueDate);
 
+    /**
+     * 到期前通知（單一交易內完成一個 chunk）：
+     * 依 id 順序取出 afterId 之後、到期日在 [from, until) 且尚未通知過的在借記錄，寫入 loan_notifications 後回傳
+     * 分片執行時只處理 id % shards = shard 的記錄（不分片時 shards = 1, shard = 0）
+     * 回傳欄位：[0] loanId, [1] username, [2] dueDate (yyyy-MM-dd)
+     */
+    @Transactional
+    @Query(value = """
+        WITH candidates AS (
+            SELECT l.id
+            FROM loans l
+            WHERE l.returned_at IS NULL
+              AND l.due_date >= :from
+              AND l.due_date < :until
+              AND l.id > :afterId
+              AND l.id % :shards = :shard
+              AND NOT EXISTS (SELECT 1 FROM loan_notifications n WHERE n.loan_id = l.id AND n.kind = :kind)
+            ORDER BY l.id
+            LIMIT :limit
+        ),
+        claimed AS (
+            INSERT INTO loan_notifications (loan_id, kind)
+            SELECT id, :kind FROM candidates
+            ON CONFLICT DO NOTHING
+            RETURNING loan_id
+        )
+        SELECT l.id, u.username, to_char(l.due_date, 'YYYY-MM-DD') AS due_date
+        FROM claimed c
+        JOIN loans l ON l.id = c.loan_id
+        JOIN users u ON u.id = l.borrowed_user_id
+        ORDER BY l.id
+        """, nativeQuery = true)
+    List<Object[]> claimNotifications(@Param("kind") String kind,
+                                      @Param("from") LocalDate from,
+                                      @Param("until") LocalDate until,
+                                      @Param("afterId") long afterId,
+                                      @Param("shards") int shards,
+                                      @Param("shard") int shard,
+                                      @Param("limit") int limit);
+
     /**
      * 前置檢查：驗證副本存在和分類計數
      */
     @Query("SELECT COUNT(bc) FROM InventoryItem bc WHERE bc.id IN :copyIds")
     long countExistingCopies(@Param("copyIds") List<Long> copyIds);
 
+    /**
+     * 前置檢查（單次查詢）：依分類彙總「本次請求的副本數」與「使用者目前在借數」
+     * 回傳欄位：[0] categoryId, [1] requestedCount, [2] currentCount
+     * 所有分類的 requestedCount 加總即為實際存在的副本數
+     */
+    @Query(value = """
+        SELECT b.category_id AS category_id,
+               COUNT(*) FILTER (WHERE x.src = 'REQ') AS requested_count,
+               COUNT(*) FILTER (WHERE x.src = 'CUR') AS current_count
+        FROM (
+            SELECT bc.book_id, 'REQ' AS src
+            FROM book_copies bc
+            WHERE bc.id IN (:copyIds)
+            UNION ALL
+            SELECT bc.book_id, 'CUR' AS src
+            FROM loans l
+            JOIN book_copies bc ON bc.id = l.copy_id
+            WHERE l.borrowed_user_id = :userId
+              AND l.returned_at IS NULL
+        ) x
+        JOIN books b ON b.id = x.book_id
+        GROUP BY b.category_id
+        """, nativeQuery = true)
+    List<Object[]> summarizeBorrowByCategory(@Param("userId") Long userId, @Param("copyIds") List<Long> copyIds);
+
     /**
      * 借書Transaction: 鎖定副本並檢查是否可借
      */
@@ -32,6 +102,103 @@ public interface LoanRepository extends JpaRepository<Loan, Long> {
     @Query("SELECT bc FROM InventoryItem bc WHERE bc.id IN :copyIds ORDER BY bc.id")
     List<InventoryItem> findAndLockCopies(@Param("copyIds") List<Long> copyIds);
 
+    /**
+     * 借書Transaction：將已鎖定的副本改成 BORROWED（單一 UPDATE）
+     */
+    @Modifying
+    @Query("UPDATE InventoryItem bc SET bc.status = 'BORROWED' " +
+           "WHERE bc.id IN :copyIds")
+    int updateCopyStatusToBorrowed(@Param("copyIds") List<Long> copyIds);
+
+    /**
+     * 借書Transaction：以單一 multi-row INSERT 建立借閱記錄
+     * copyIds、loanPeriodDays 以陣列綁定且一一對應，到期日 = borrowDate + 借閱天數
+     * 回傳欄位：[0] loanId, [1] copyId
+     */
+    @Transactional
+    @Query(value = """
+        WITH inserted AS (
+            INSERT INTO loans (copy_id, borrowed_user_id, borrowed_at, due_date)
+            SELECT c.copy_id, :userId, CAST(:borrowDate AS date), CAST(:borrowDate AS date) + c.loan_days
+            FROM unnest(CAST(:copyIds AS bigint[]),
+                        CAST(:loanPeriodDays AS int[])) AS c(copy_id, loan_days)
+            ORDER BY c.copy_id
+            RETURNING id, copy_id
+        )
+        SELECT id, copy_id FROM inserted
+        """, nativeQuery = true)
+    List<Object[]> insertLoans(@Param("userId") Long userId,
+                               @Param("borrowDate") LocalDate borrowDate,
+                               @Param("copyIds") Long[] copyIds,
+                               @Param("loanPeriodDays") Integer[] loanPeriodDays);
+
+    /**
+     * 樂觀借書：不先鎖定讀取，直接以條件式 UPDATE 將仍為 AVAILABLE 的副本改成 BORROWED
+     * 回傳實際改到的副本 id；筆數少於請求數代表有副本已被借走（由呼叫端 rollback）
+     */
+    @Transactional
+    @Query(value = """
+        WITH claimed AS (
+            UPDATE book_copies SET status = 'BORROWED'
+            WHERE id IN (:copyIds) AND status = 'AVAILABLE'
+            RETURNING id
+        )
+        SELECT id FROM claimed ORDER BY id
+        """, nativeQuery = true)
+    List<Long> claimAvailableCopies(@Param("copyIds") List<Long> copyIds);
+
+    /**
+     * 依書名借書：在指定分館挑出最多 quantity 本可借副本並直接改成 BORROWED（沿 idx_copies_bbs 掃描）
+     * FOR UPDATE SKIP LOCKED 跳過其他交易正在借的副本，同一書目的併發請求不會互相排隊
+     * 回傳借到的副本 id，可能少於 quantity
+     */
+    @Transactional
+    @Query(value = """
+        WITH picked AS (
+            SELECT bc.id
+            FROM book_copies bc
+            WHERE bc.book_id = :bookId
+              AND bc.branch_id = :branchId
+              AND bc.status = 'AVAILABLE'
+            LIMIT :quantity
+            FOR UPDATE SKIP LOCKED
+        ),
+        claimed AS (
+            UPDATE book_copies bc SET status = 'BORROWED'
+            FROM picked p
+            WHERE bc.id = p.id
+            RETURNING bc.id
+        )
+        SELECT id FROM claimed ORDER BY id
+        """, nativeQuery = true)
+    List<Long> claimAnyAvailableCopies(@Param("bookId") Long bookId,
+                                       @Param("branchId") Long branchId,
+                                       @Param("quantity") int quantity);
+
+    /**
+     * 依書名借書前置檢查：書目的分類與使用者在該分類目前的在借數
+     * 回傳欄位：[0] categoryId, [1] currentCount；書目不存在時回傳空 List
+     */
+    @Query(value = """
+        SELECT b.category_id,
+               (SELECT COUNT(*)
+                FROM loans l
+                JOIN book_copies bc ON bc.id = l.copy_id
+                JOIN books lb ON lb.id = bc.book_id
+                WHERE l.borrowed_user_id = :userId
+                  AND l.returned_at IS NULL
+                  AND lb.category_id = b.category_id) AS current_count
+        FROM books b
+        WHERE b.id = :bookId
+        """, nativeQuery = true)
+    List<Object[]> summarizeBorrowByTitle(@Param("userId") Long userId, @Param("bookId") Long bookId);
+
+    /**
+     * 樂觀借書 / 依書名借書：取得已改成 BORROWED 的副本（不加鎖）
+     */
+    @Query("SELECT bc FROM InventoryItem bc JOIN FETCH bc.book JOIN FETCH bc.branch WHERE bc.id IN :copyIds ORDER BY bc.id")
+    List<InventoryItem> findCopiesWithBook(@Param("copyIds") List<Long> copyIds);
+
     /**
      * 查詢使用者對應副本的未歸還借閱記錄
      */
@@ -83,23 +250,44 @@ public interface LoanRepository extends JpaRepository<Loan, Long> {
     }
 
     /**
-     * 查詢所有未歸還且到期日在未來5天內或已逾期的借閱記錄
+     * 逾期檢查（keyset 分頁）：依 id 順序取出 afterId 之後、未歸還且到期日在 until 之前（含）的借閱記錄
+     * 直接 join users / books 取出通知需要的欄位，不載入 entity；分片執行時只處理 id % shards = shard 的記錄
+     * 回傳欄位：[0] loanId, [1] username, [2] title, [3] dueDate (yyyy-MM-dd), [4] daysUntilDue
      */
-    @Query("SELECT l FROM Loan l WHERE l.returnedDate IS NULL AND l.dueDate <= :fiveDaysFromNow")
-    List<Loan> findLoansToNotify(@Param("fiveDaysFromNow") LocalDate fiveDaysFromNow);
-
-    /**
-     * 查詢所有未歸還且到期日在未來5天內或已逾期的借閱記錄（使用當前日期）
-     */
-    default List<Loan> findLoansToNotify() {
-        return findLoansToNotify(LocalDate.now().plusDays(5));
-    }
+    @Query(value = """
+        SELECT l.id,
+               u.username,
+               b.title,
+               to_char(l.due_date, 'YYYY-MM-DD') AS due_date,
+               CAST(l.due_date AS date) - CURRENT_DATE AS days_until_due
+        FROM loans l
+        JOIN users u ON u.id = l.borrowed_user_id
+        JOIN book_copies bc ON bc.id = l.copy_id
+        JOIN books b ON b.id = bc.book_id
+        WHERE l.returned_at IS NULL
+          AND l.due_date <= :until
+          AND l.id > :afterId
+          AND l.id % :shards = :shard
+        ORDER BY l.id
+        LIMIT :limit
+        """, nativeQuery = true)
+    List<Object[]> findLoansToNotifyAfter(@Param("until") LocalDate until,
+                                          @Param("afterId") long afterId,
+                                          @Param("shards") int shards,
+                                          @Param("shard") int shard,
+                                          @Param("limit") int limit);
 
     /**
      * 查詢使用者當前未歸還的借閱記錄
      */
     @Query("SELECT l FROM Loan l WHERE l.user.id = :userId AND l.returnedDate IS NULL")
     List<Loan> findByUserIdAndReturnedDateIsNull(@Param("userId") Long userId);
-}
-
 
+    /**
+     * 匯出用：依 id 順序串流所有借閱記錄（需在交易內使用，fetch size 讓 driver 分批取回）
+     * 回傳欄位：[0] id, [1] copyId, [2] userId, [3] borrowedAt, [4] dueDate, [5] returnedAt
+     */
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+    @Query(value = "SELECT id, copy_id, borrowed_user_id, borrowed_at, due_date, returned_at FROM loans ORDER BY id", nativeQuery = true)
+    Stream<Object[]> streamAllForExport();
+}
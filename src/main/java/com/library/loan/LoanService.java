@@ -1,11 +1,15 @@
 package com.library.loan;
 
-import com.library.book.BookCategory;
-import com.library.book.BookCategoryRepository;
+import com.library.book.BookCategoryRuleRegistry;
+import com.library.inventory.AvailabilityCounters;
 import com.library.inventory.InventoryItem;
 import com.library.inventory.InventoryItemRepository;
 import com.library.loan.dto.BorrowDtos;
 import com.library.user.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.persistence.EntityManager;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -14,24 +18,49 @@ import org.springframework.web.server.ResponseStatusException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
 public class LoanService {
+
+    /**
+     * 借書時取得副本的方式
+     * PESSIMISTIC：SELECT ... FOR UPDATE 鎖定後檢查；OPTIMISTIC：條件式 UPDATE（status = 'AVAILABLE'）並檢查筆數
+     */
+    enum BorrowStrategy { PESSIMISTIC, OPTIMISTIC }
+
     private final LoanRepository loanRepository;
     private final InventoryItemRepository inventoryItemRepository;
     private final UserRepository userRepository;
-    private final BookCategoryRepository bookCategoryRepository;
-
-    private static final int MAX_BOOKS = 10; // for BOOK type (書籍)
-    private static final int MAX_JOURNALS = 5; // for JOURNAL type (圖書)
+    private final BookCategoryRuleRegistry categoryRuleRegistry;
+    private final AvailabilityCounters availabilityCounters;
+    private final EntityManager entityManager;
+    private final MeterRegistry meterRegistry;
+    private final BorrowStrategy borrowStrategy;
+    private final Timer copyLockTimer;
+    private final Timer activeLoanLockTimer;
 
     public LoanService(LoanRepository loanRepository, InventoryItemRepository inventoryItemRepository, 
-                      UserRepository userRepository, BookCategoryRepository bookCategoryRepository) {
+                      UserRepository userRepository, BookCategoryRuleRegistry categoryRuleRegistry,
+                      AvailabilityCounters availabilityCounters, EntityManager entityManager, MeterRegistry meterRegistry,
+                      @Value("${loan.borrow.strategy:pessimistic}") String borrowStrategy) {
         this.loanRepository = loanRepository;
         this.inventoryItemRepository = inventoryItemRepository;
         this.userRepository = userRepository;
-        this.bookCategoryRepository = bookCategoryRepository;
+        this.categoryRuleRegistry = categoryRuleRegistry;
+        this.availabilityCounters = availabilityCounters;
+        this.entityManager = entityManager;
+        this.meterRegistry = meterRegistry;
+        this.borrowStrategy = BorrowStrategy.valueOf(borrowStrategy.trim().toUpperCase(Locale.ROOT));
+        this.copyLockTimer = Timer.builder("library.loan.lock.wait")
+            .description("Time spent acquiring row locks")
+            .tag("lock", "book_copies")
+            .register(meterRegistry);
+        this.activeLoanLockTimer = Timer.builder("library.loan.lock.wait")
+            .description("Time spent acquiring row locks")
+            .tag("lock", "active_loans")
+            .register(meterRegistry);
     }
 
     /**
@@ -39,20 +68,70 @@ public class LoanService {
      */
     @Transactional
     public BorrowDtos.BorrowResponse borrowBooks(Long userId, BorrowDtos.BorrowRequest request) {
-        // 確定使用者存在
-        userRepository.findById(userId)
-            .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found: " + userId));
-        
-        // 正規化 payload（將條碼轉成 copy_id、去重）
-        List<Long> copyIds = normalizePayload(request.items());
-        
-        // 前置檢查（交易外；只讀）
-        validateBorrowRequest(userId, copyIds);
-        
-        // 鎖副本 + 寫入/更新
-        List<BorrowDtos.BorrowLoan> loans = processBorrowTransaction(userId, copyIds);
-        
-        return new BorrowDtos.BorrowResponse(loans);
+        try {
+            // 確定使用者存在
+            userRepository.findById(userId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found: " + userId));
+            
+            // 正規化 payload（將條碼轉成 copy_id、去重）
+            List<Long> copyIds = normalizePayload(request.items(), BorrowDtos.BorrowItem::bookCopiesId, BorrowDtos.BorrowItem::barcode);
+            
+            // 前置檢查（交易外；只讀）
+            validateBorrowRequest(userId, copyIds);
+            
+            // 鎖副本 + 寫入/更新
+            List<BorrowDtos.BorrowLoan> loans = processBorrowTransaction(userId, copyIds);
+            
+            return new BorrowDtos.BorrowResponse(loans);
+        } catch (ResponseStatusException e) {
+            recordBorrowRejection(e);
+            throw e;
+        }
+    }
+
+    /**
+     * 依書名借書：在指定分館借 quantity 本任一可借副本，不需指定副本
+     * 以 FOR UPDATE SKIP LOCKED 挑選副本，熱門書目的併發請求會各自拿到不同副本，不會排隊等鎖或撞同一本
+     */
+    @Transactional
+    public BorrowDtos.BorrowResponse borrowByTitle(Long userId, BorrowDtos.BorrowByTitleRequest request) {
+        try {
+            // 確定使用者存在
+            userRepository.findById(userId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found: " + userId));
+            
+            // 前置檢查（書目存在、分類上限）
+            validateBorrowByTitleRequest(userId, request);
+            
+            // 挑選並借出副本；數量不足時整筆 rollback
+            List<Long> copyIds = copyLockTimer.record(() ->
+                loanRepository.claimAnyAvailableCopies(request.bookId(), request.branchId(), request.quantity()));
+            if (copyIds.size() < request.quantity()) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, 
+                    "Not enough available copies: requested " + request.quantity() + ", available " + copyIds.size());
+            }
+            
+            List<BorrowDtos.BorrowLoan> loans = createLoans(userId, loanRepository.findCopiesWithBook(copyIds));
+            
+            return new BorrowDtos.BorrowResponse(loans);
+        } catch (ResponseStatusException e) {
+            recordBorrowRejection(e);
+            throw e;
+        }
+    }
+
+    /**
+     * 依拒絕原因累計借書失敗次數
+     */
+    private void recordBorrowRejection(ResponseStatusException e) {
+        String reason = switch (e.getStatusCode().value()) {
+            case 400 -> "invalid_request";
+            case 404 -> "not_found";
+            case 409 -> "not_available";
+            case 422 -> "limit_exceeded";
+            default -> "other";
+        };
+        meterRegistry.counter("library.loan.borrow.rejected", "reason", reason).increment();
     }
 
     /**
@@ -65,7 +144,7 @@ public class LoanService {
             .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found: " + userId));
         
         // 正規化 payload（將條碼轉成 copy_id、去重）
-        List<Long> copyIds = normalizeReturnPayload(request.items());
+        List<Long> copyIds = normalizePayload(request.items(), BorrowDtos.ReturnItem::bookCopiesId, BorrowDtos.ReturnItem::barcode);
         
         // 前置檢查（交易外；只讀）
         validateReturnRequest(copyIds);
@@ -78,46 +157,39 @@ public class LoanService {
 
     /**
      * 正規化 payload：將條碼轉成 copy_id、去重
+     * 所有條碼以單次查詢批次解析，找不到的條碼一次全部回報
      */
-    private List<Long> normalizePayload(List<BorrowDtos.BorrowItem> items) {
-        Set<Long> copyIds = new HashSet<>();
-        
-        for (BorrowDtos.BorrowItem item : items) {
-            if (item.bookCopiesId() != null) {
-                copyIds.add(item.bookCopiesId());
-            } else if (item.barcode() != null && !item.barcode().trim().isEmpty()) {
-                Optional<InventoryItem> copy = inventoryItemRepository.findByBarcode(item.barcode().trim());
-                if (copy.isPresent()) {
-                    copyIds.add(copy.get().getId());
-                } else {
-                    throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Barcode not found: " + item.barcode());
-                }
+    <T> List<Long> normalizePayload(List<T> items, Function<T, Long> copyIdOf, Function<T, String> barcodeOf) {
+        Set<Long> copyIds = new LinkedHashSet<>();
+        Set<String> barcodes = new LinkedHashSet<>();
+        
+        for (T item : items) {
+            Long copyId = copyIdOf.apply(item);
+            String barcode = barcodeOf.apply(item);
+            if (copyId != null) {
+                copyIds.add(copyId);
+            } else if (barcode != null && !barcode.trim().isEmpty()) {
+                barcodes.add(barcode.trim());
             } else {
                 throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Each item must have either bookCopiesId or barcode");
             }
         }
         
-        return new ArrayList<>(copyIds);
-    }
-
-    /**
-     * 正規化還書 payload：將條碼轉成 copy_id、去重
-     */
-    private List<Long> normalizeReturnPayload(List<BorrowDtos.ReturnItem> items) {
-        Set<Long> copyIds = new HashSet<>();
-        
-        for (BorrowDtos.ReturnItem item : items) {
-            if (item.bookCopiesId() != null) {
-                copyIds.add(item.bookCopiesId());
-            } else if (item.barcode() != null && !item.barcode().trim().isEmpty()) {
-                Optional<InventoryItem> copy = inventoryItemRepository.findByBarcode(item.barcode().trim());
-                if (copy.isPresent()) {
-                    copyIds.add(copy.get().getId());
-                } else {
-                    throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Barcode not found: " + item.barcode());
-                }
-            } else {
-                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Each item must have either bookCopiesId or barcode");
+        if (!barcodes.isEmpty()) {
+            Map<String, Long> idByBarcode = new HashMap<>();
+            for (Object[] row : inventoryItemRepository.findIdsByBarcodeIn(barcodes)) {
+                idByBarcode.put((String) row[0], (Long) row[1]);
+            }
+            
+            List<String> missingBarcodes = barcodes.stream()
+                .filter(barcode -> !idByBarcode.containsKey(barcode))
+                .collect(Collectors.toList());
+            if (!missingBarcodes.isEmpty()) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Barcode not found: " + missingBarcodes);
+            }
+            
+            for (String barcode : barcodes) {
+                copyIds.add(idByBarcode.get(barcode));
             }
         }
         
@@ -134,8 +206,15 @@ public class LoanService {
         
         System.out.println("Validating copyIds: " + copyIds);
         
+        // 單次查詢：依分類彙總請求數量與使用者當前已借數量
+        List<Object[]> summary = loanRepository.summarizeBorrowByCategory(userId, copyIds);
+        
+        long gotCnt = 0;
+        for (Object[] row : summary) {
+            gotCnt += ((Number) row[1]).longValue();
+        }
+        
         // 檢查副本是否存在
-        long gotCnt = loanRepository.countExistingCopies(copyIds);
         int wantCnt = copyIds.size();
         
         System.out.println("Want count: " + wantCnt + ", Got count: " + gotCnt);
@@ -144,65 +223,37 @@ public class LoanService {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Some copies not found");
         }
         
-        // 1.計算新借閱請求的分類數量
-        int reqBook = 0;
-        int reqJournal = 0;
-        
-        for (Long copyId : copyIds) {
-            Optional<InventoryItem> item = inventoryItemRepository.findById(copyId);
-            if (item.isPresent()) {
-                Long categoryId = item.get().getBook().getCategoryId();
-                if (isBookCategory(categoryId)) {
-                    reqBook++;
-                } else if (isJournalCategory(categoryId)) {
-                    reqJournal++;
-                }
-            }
-        }
-        
-        // 2.查詢使用者當前已借的數量
-        List<Loan> currentLoans = loanRepository.findByUserIdAndReturnedDateIsNull(userId);
-        int currentBookCount = 0;
-        int currentJournalCount = 0;
-        
-        for (Loan loan : currentLoans) {
-            Long categoryId = loan.getInventoryItem().getBook().getCategoryId();
-            if (isBookCategory(categoryId)) {
-                currentBookCount++;
-            } else if (isJournalCategory(categoryId)) {
-                currentJournalCount++;
+        // 依分類規則（rule_max_concurrent）檢查總數是否超過限制
+        for (Object[] row : summary) {
+            BookCategoryRuleRegistry.CategoryRule rule = categoryRuleRegistry.getRule(((Number) row[0]).longValue());
+            int requested = ((Number) row[1]).intValue();
+            int current = ((Number) row[2]).intValue();
+            
+            if (requested > 0 && current + requested > rule.maxConcurrent()) {
+                throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY, 
+                    rule.category() + " limit exceeded: current " + current + ", requested " + requested + ", max " + rule.maxConcurrent());
             }
+            
+            System.out.println("Borrow validation passed - " + rule.category() + ": current " + current + ", requested " + requested);
         }
-        
-        // 3.檢查總數是否超過限制
-        if (currentBookCount + reqBook > MAX_BOOKS) {
-            throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY, 
-                "BOOK limit exceeded: current " + currentBookCount + ", requested " + reqBook + ", max " + MAX_BOOKS);
+    }
+
+    /**
+     * 依書名借書前置檢查：書目存在且借閱後不超過分類上限
+     */
+    private void validateBorrowByTitleRequest(Long userId, BorrowDtos.BorrowByTitleRequest request) {
+        List<Object[]> summary = loanRepository.summarizeBorrowByTitle(userId, request.bookId());
+        if (summary.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Book not found: " + request.bookId());
         }
         
-        if (currentJournalCount + reqJournal > MAX_JOURNALS) {
+        Object[] row = summary.get(0);
+        BookCategoryRuleRegistry.CategoryRule rule = categoryRuleRegistry.getRule(((Number) row[0]).longValue());
+        int current = ((Number) row[1]).intValue();
+        if (current + request.quantity() > rule.maxConcurrent()) {
             throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY, 
-                "JOURNAL limit exceeded: current " + currentJournalCount + ", requested " + reqJournal + ", max " + MAX_JOURNALS);
+                rule.category() + " limit exceeded: current " + current + ", requested " + request.quantity() + ", max " + rule.maxConcurrent());
         }
-        
-        System.out.println("Borrow validation passed - Current: BOOK=" + currentBookCount + ", JOURNAL=" + currentJournalCount + 
-                          ", Request: BOOK=" + reqBook + ", JOURNAL=" + reqJournal);
-    }
-    
-    /**
-     * 判斷分類是否為書
-     */
-    private boolean isBookCategory(Long categoryId) {
-        Optional<BookCategory> category = bookCategoryRepository.findById(categoryId);
-        return category.isPresent() && "BOOK".equals(category.get().getCategory());
-    }
-    
-    /**
-     * 判斷分類是否為圖書
-     */
-    private boolean isJournalCategory(Long categoryId) {
-        Optional<BookCategory> category = bookCategoryRepository.findById(categoryId);
-        return category.isPresent() && "JOURNAL".equals(category.get().getCategory());
     }
 
     /**
@@ -242,7 +293,61 @@ public class LoanService {
      */
     @Transactional
     private List<BorrowDtos.BorrowLoan> processBorrowTransaction(Long userId, List<Long> copyIds) {
-        // 鎖定副本並檢查是否可借
+        // 悲觀模式先鎖定副本再檢查；樂觀模式以條件式 UPDATE 直接借出
+        List<InventoryItem> lockedCopies = copyLockTimer.record(() -> borrowStrategy == BorrowStrategy.OPTIMISTIC
+            ? claimCopiesOptimistically(copyIds)
+            : lockAvailableCopies(copyIds));
+        
+        return createLoans(userId, lockedCopies);
+    }
+
+    /**
+     * 為已改成 BORROWED 的副本建立借閱記錄（單一 multi-row INSERT），並扣除各分館可借數量
+     * 使用者已在交易開頭確認存在，這裡不再逐筆載入
+     */
+    private List<BorrowDtos.BorrowLoan> createLoans(Long userId, List<InventoryItem> lockedCopies) {
+        // 借閱期限依分類規則（rule_loan_period_days）
+        LocalDate borrowDate = LocalDate.now();
+        List<Long> copyIds = new ArrayList<>(lockedCopies.size());
+        Map<Long, Integer> loanPeriodDaysByCopy = new HashMap<>();
+        for (InventoryItem copy : lockedCopies) {
+            copyIds.add(copy.getId());
+            loanPeriodDaysByCopy.put(copy.getId(),
+                categoryRuleRegistry.getRule(copy.getBook().getCategoryId()).loanPeriodDays());
+        }
+        
+        // 建立多個借閱記錄
+        List<Object[]> inserted = loanRepository.insertLoans(
+            userId,
+            borrowDate,
+            copyIds.toArray(Long[]::new),
+            copyIds.stream().map(loanPeriodDaysByCopy::get).toArray(Integer[]::new));
+        
+        Map<Long, Long> loanIdByCopy = new HashMap<>();
+        for (Object[] row : inserted) {
+            loanIdByCopy.put(((Number) row[1]).longValue(), ((Number) row[0]).longValue());
+        }
+        
+        LocalDateTime now = LocalDateTime.now();
+        List<BorrowDtos.BorrowLoan> loans = new ArrayList<>(copyIds.size());
+        for (Long copyId : copyIds) {
+            LocalDateTime dueAt = now.plusDays(loanPeriodDaysByCopy.get(copyId));
+            loans.add(new BorrowDtos.BorrowLoan(loanIdByCopy.get(copyId), copyId, dueAt));
+        }
+
+        // 各分館可借數量 -1
+        availabilityCounters.copiesBorrowed(copyIds);
+
+        // 副本狀態是以 set-based UPDATE 修改，移出 persistence context，避免同一交易後續讀到舊的狀態
+        lockedCopies.forEach(entityManager::detach);
+        
+        return loans;
+    }
+
+    /**
+     * 悲觀模式：以 PESSIMISTIC_WRITE 鎖定副本，確認全部存在且可借
+     */
+    private List<InventoryItem> lockAvailableCopies(List<Long> copyIds) {
         List<InventoryItem> lockedCopies = loanRepository.findAndLockCopies(copyIds);
         
         // 檢查是否有不可用的副本
@@ -264,27 +369,26 @@ public class LoanService {
                 "Some copies not found during locking");
         }
         
-        // 建立多個借閱記錄
-        List<BorrowDtos.BorrowLoan> loans = new ArrayList<>();
-        for (InventoryItem copy : lockedCopies) {
-            Loan loan = new Loan();
-            loan.setInventoryItem(copy);
-            loan.setUser(userRepository.findById(userId).orElseThrow());
-            loan.setBorrowDate(LocalDate.now());
-            loan.setDueDate(LocalDate.now().plusDays(30));
-            loan.setReturnedDate(null);
-            
-            Loan savedLoan = loanRepository.save(loan);
-            
-            // 更新副本狀態
-            copy.setStatus("BORROWED");
-            inventoryItemRepository.save(copy);
+        // 單一 UPDATE 將副本改成 BORROWED
+        loanRepository.updateCopyStatusToBorrowed(copyIds);
+        return lockedCopies;
+    }
 
-            LocalDateTime dueAt = LocalDateTime.now().plusMonths(1);
-            loans.add(new BorrowDtos.BorrowLoan(savedLoan.getId(), copy.getId(), dueAt));
+    /**
+     * 樂觀模式：不先鎖定讀取，以條件式 UPDATE 只借出仍為 AVAILABLE 的副本，以筆數判斷是否全部成功
+     * 任何一本已被借走時拋出 409，整個交易 rollback（已改到的副本一併還原）
+     */
+    private List<InventoryItem> claimCopiesOptimistically(List<Long> copyIds) {
+        List<Long> claimedIds = loanRepository.claimAvailableCopies(copyIds);
+        if (claimedIds.size() != copyIds.size()) {
+            Set<Long> claimed = new HashSet<>(claimedIds);
+            List<Long> notAvailableIds = copyIds.stream()
+                .filter(copyId -> !claimed.contains(copyId))
+                .collect(Collectors.toList());
+            throw new ResponseStatusException(HttpStatus.CONFLICT, 
+                "Some copies are not available: " + notAvailableIds);
         }
-        
-        return loans;
+        return loanRepository.findCopiesWithBook(copyIds);
     }
 
     /**
@@ -298,7 +402,7 @@ public class LoanService {
         System.out.println("Processing return transaction for user " + userId + " with copyIds: " + copyIds);
         
         // 鎖住「此使用者在借中的副本Row
-        List<Object[]> lockedLoans = loanRepository.findAndLockActiveLoans(userId, copyIds);
+        List<Object[]> lockedLoans = activeLoanLockTimer.record(() -> loanRepository.findAndLockActiveLoans(userId, copyIds));
         
         System.out.println("Found " + lockedLoans.size() + " active loans for user " + userId);
         
@@ -324,6 +428,7 @@ public class LoanService {
         // 將副本改回可借
         int updatedCopies = loanRepository.updateCopyStatusToAvailable(copyIds);
         System.out.println("Updated " + updatedCopies + " copies to AVAILABLE status");
+        availabilityCounters.copiesReturned(copyIds);
 
         List<BorrowDtos.ReturnLoan> returnLoans = new ArrayList<>();
         LocalDateTime returnedAt = LocalDateTime.now();
@@ -351,23 +456,10 @@ public class LoanService {
         InventoryItem item = loan.getInventoryItem();
         item.setStatus("AVAILABLE");
         inventoryItemRepository.save(item);
+        availabilityCounters.copiesReturned(List.of(item.getId()));
         return loanRepository.save(loan);
     }
 
-    public List<Map<String, Object>> getAllCopies() {
-        return inventoryItemRepository.findAll().stream()
-            .map(item -> {
-                Map<String, Object> map = new HashMap<>();
-                map.put("id", item.getId());
-                map.put("status", item.getStatus());
-                map.put("bookId", item.getBook().getId());
-                map.put("branchId", item.getBranch().getId());
-                map.put("barcode", item.getBarcode() != null ? item.getBarcode() : "N/A");
-                return map;
-            })
-            .collect(Collectors.toList());
-    }
-
     /**
      * 使用者的所有借閱記錄
      */
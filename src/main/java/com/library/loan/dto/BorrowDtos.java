@@ -1,6 +1,8 @@
 package com.library.loan.dto;
 
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -17,6 +19,16 @@ public class BorrowDtos {
             List<BorrowItem> items
     ) {}
     
+    // 依書名借書：在指定分館借任意 quantity 本可借副本
+    public record BorrowByTitleRequest(
+            @NotNull(message = "bookId 不能為空")
+            Long bookId,
+            @NotNull(message = "branchId 不能為空")
+            Long branchId,
+            @Min(value = 1, message = "借閱數量必須大於 0")
+            int quantity
+    ) {}
+    
     public record BorrowLoan(
             Long loanId,
             Long copyId,
@@ -0,0 +1,33 @@
+package com.library.notification;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+
+/**
+ * 將通知逐行附加到本機檔案，方便測試時檢查送出內容
+ */
+@Component
+@ConditionalOnProperty(name = "notification.sink", havingValue = "file")
+public class FileNotificationSink implements NotificationSink {
+
+    private final Path path;
+
+    public FileNotificationSink(@Value("${notification.file.path:notifications.log}") String path) {
+        this.path = Path.of(path);
+    }
+
+    @Override
+    public synchronized void send(Notification notification) throws IOException {
+        String line = LocalDateTime.now() + "\t" + notification.kind() + "\t" + notification.recipient() + "\t" +
+                notification.message() + System.lineSeparator();
+        Files.writeString(path, line, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,42 @@
+package com.library.notification;
+
+import com.library.config.RestTemplateConfig;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+
+import java.time.Duration;
+
+/**
+ * 以 HTTP POST 將通知送到外部服務（測試時指向 WireMock 的 /notify stub）
+ * 非 2xx 回應會丟出例外並交由 outbox 重試；連線 / 讀取逾時讓外部服務變慢時不會無限期佔住 worker
+ */
+@Component
+@ConditionalOnProperty(name = "notification.sink", havingValue = "http")
+public class HttpNotificationSink implements NotificationSink {
+
+    private final RestClient restClient;
+
+    public HttpNotificationSink(RestClient.Builder restClientBuilder,
+                                @Value("${notification.http.url}") String url,
+                                @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+                                @Value("${notification.http.connect-timeout-ms:2000}") long connectTimeoutMillis,
+                                @Value("${notification.http.read-timeout-ms:5000}") long readTimeoutMillis) {
+        this.restClient = restClientBuilder.clone()
+                .baseUrl(url)
+                .requestFactory(RestTemplateConfig.requestFactory(
+                        virtualThreads, Duration.ofMillis(connectTimeoutMillis), Duration.ofMillis(readTimeoutMillis)))
+                .build();
+    }
+
+    @Override
+    public void send(Notification notification) {
+        restClient.post()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(notification)
+                .retrieve()
+                .toBodilessEntity();
+    }
+}
@@ -0,0 +1,17 @@
+package com.library.notification;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * 以 System.out 模擬通知（預設）
+ */
+@Component
+@ConditionalOnProperty(name = "notification.sink", havingValue = "log", matchIfMissing = true)
+public class LogNotificationSink implements NotificationSink {
+
+    @Override
+    public void send(Notification notification) {
+        System.out.println("[Notify] " + notification.kind() + " -> " + notification.recipient() + ": " + notification.message());
+    }
+}
@@ -0,0 +1,13 @@
+package com.library.notification;
+
+/**
+ * 一則待發送的通知
+ * dedupeKey 相同的通知只會進入 outbox 一次
+ */
+public record Notification(
+        Long loanId,
+        String kind,
+        String recipient,
+        String message,
+        String dedupeKey
+) {}
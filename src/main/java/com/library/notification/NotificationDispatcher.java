@@ -0,0 +1,17 @@
+package com.library.notification;
+
+import java.util.List;
+
+/**
+ * 通知發送入口
+ * 呼叫端只負責把通知交給 dispatcher，實際送出（log / file / HTTP）由背景 worker 非同步處理
+ */
+public interface NotificationDispatcher {
+
+    /**
+     * 將通知排入待發送佇列；若呼叫端在交易中，會與該交易一起 commit / rollback
+     */
+    void dispatch(Notification notification);
+
+    void dispatchAll(List<Notification> notifications);
+}
@@ -0,0 +1,99 @@
+package com.library.notification;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * notification_outbox 的存取
+ * 待發送通知與業務資料寫在同一個交易內，由 NotificationOutboxWorker 以 FOR UPDATE SKIP LOCKED 分批領取
+ */
+@Repository
+public class NotificationOutbox {
+
+    /**
+     * 領取到的一筆待發送通知
+     */
+    public record Entry(long id, int attempts, Notification notification) {}
+
+    private static final String INSERT = """
+        INSERT INTO notification_outbox (loan_id, kind, recipient, message, dedupe_key)
+        VALUES (?, ?, ?, ?, ?)
+        ON CONFLICT (dedupe_key) DO NOTHING
+        """;
+
+    // 領取時將 next_attempt_at 往後推一段租約時間；worker 中途當機時，租約到期後會被重新領取
+    private static final String CLAIM = """
+        UPDATE notification_outbox o
+        SET next_attempt_at = now() + make_interval(secs => ?)
+        WHERE o.id IN (
+            SELECT id FROM notification_outbox
+            WHERE status = 'PENDING' AND next_attempt_at <= now()
+            ORDER BY id
+            LIMIT ?
+            FOR UPDATE SKIP LOCKED
+        )
+        RETURNING o.id, o.attempts, o.loan_id, o.kind, o.recipient, o.message, o.dedupe_key
+        """;
+
+    private static final String MARK_SENT = """
+        UPDATE notification_outbox
+        SET status = 'SENT', sent_at = now(), attempts = attempts + 1, last_error = NULL
+        WHERE id = ANY(?)
+        """;
+
+    // 指數退避：backoff * 2^attempts 秒（上限 1 小時）；達到最大次數後標記為 FAILED
+    private static final String MARK_FAILED = """
+        UPDATE notification_outbox
+        SET attempts = attempts + 1,
+            last_error = ?,
+            status = CASE WHEN attempts + 1 >= ? THEN 'FAILED' ELSE 'PENDING' END,
+            next_attempt_at = now() + make_interval(secs => LEAST(3600, ? * power(2, attempts)))
+        WHERE id = ?
+        """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public NotificationOutbox(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void enqueue(List<Notification> notifications) {
+        jdbcTemplate.batchUpdate(INSERT, notifications, notifications.size(), (ps, n) -> {
+            ps.setObject(1, n.loanId());
+            ps.setString(2, n.kind());
+            ps.setString(3, n.recipient());
+            ps.setString(4, n.message());
+            ps.setString(5, n.dedupeKey());
+        });
+    }
+
+    public List<Entry> claim(int limit, int leaseSeconds) {
+        return jdbcTemplate.query(CLAIM, (rs, rowNum) -> new Entry(
+                rs.getLong("id"),
+                rs.getInt("attempts"),
+                new Notification(
+                        rs.getObject("loan_id", Long.class),
+                        rs.getString("kind"),
+                        rs.getString("recipient"),
+                        rs.getString("message"),
+                        rs.getString("dedupe_key"))
+        ), leaseSeconds, limit);
+    }
+
+    public void markSent(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.update(con -> {
+            var ps = con.prepareStatement(MARK_SENT);
+            ps.setArray(1, con.createArrayOf("bigint", ids.toArray()));
+            return ps;
+        });
+    }
+
+    public void markFailed(long id, String error, int maxAttempts, int backoffSeconds) {
+        jdbcTemplate.update(MARK_FAILED, error, maxAttempts, backoffSeconds, id);
+    }
+}
@@ -0,0 +1,153 @@
+package com.library.notification;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 背景發送 notification_outbox 中的通知
+ * 每次分批領取（batch-size），以 virtual thread 並行送出，同時送出的數量由 Semaphore 限制（concurrency）
+ * 送出失敗的通知依指數退避重試，超過 max-attempts 後標記為 FAILED
+ * 每批必須在 send-timeout 內送完（小於領取租約），逾時的通知視為失敗，避免租約到期後被其他節點重複領取
+ */
+@Component
+public class NotificationOutboxWorker {
+    private static final Logger log = LoggerFactory.getLogger(NotificationOutboxWorker.class);
+
+    private final NotificationOutbox outbox;
+    private final NotificationSink sink;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final int backoffSeconds;
+    private final int leaseSeconds;
+    private final long sendTimeoutNanos;
+    private final Semaphore permits;
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("notification-", 0).factory());
+
+    private final Counter sentCounter;
+    private final Counter retryCounter;
+    private final Counter failedCounter;
+
+    public NotificationOutboxWorker(NotificationOutbox outbox, NotificationSink sink, MeterRegistry meterRegistry,
+                                    @Value("${notification.outbox.batch-size:100}") int batchSize,
+                                    @Value("${notification.outbox.concurrency:16}") int concurrency,
+                                    @Value("${notification.outbox.max-attempts:5}") int maxAttempts,
+                                    @Value("${notification.outbox.backoff-seconds:30}") int backoffSeconds,
+                                    @Value("${notification.outbox.lease-seconds:300}") int leaseSeconds,
+                                    @Value("${notification.outbox.send-timeout-seconds:60}") int sendTimeoutSeconds) {
+        if (batchSize <= 0 || concurrency <= 0) {
+            throw new IllegalArgumentException("notification.outbox.batch-size and concurrency must be positive");
+        }
+        if (sendTimeoutSeconds <= 0 || sendTimeoutSeconds >= leaseSeconds) {
+            throw new IllegalArgumentException("notification.outbox.send-timeout-seconds must be positive and shorter than lease-seconds");
+        }
+        this.outbox = outbox;
+        this.sink = sink;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.backoffSeconds = backoffSeconds;
+        this.leaseSeconds = leaseSeconds;
+        this.sendTimeoutNanos = TimeUnit.SECONDS.toNanos(sendTimeoutSeconds);
+        this.permits = new Semaphore(concurrency);
+        this.sentCounter = counter(meterRegistry, "sent");
+        this.retryCounter = counter(meterRegistry, "retry");
+        this.failedCounter = counter(meterRegistry, "failed");
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("library.notification.outbox.deliveries")
+                .description("Outbox delivery attempts")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${notification.outbox.poll-interval-ms:1000}")
+    public void drain() {
+        try {
+            // 一次排程把目前到期的通知送完；每批送完才領下一批
+            while (drainBatch() == batchSize) {
+                // continue
+            }
+        } catch (InterruptedException e) {
+            // 關機中斷：保留中斷狀態，已領取但未標記的通知會在租約到期後重新領取
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("發送通知時發生錯誤", e);
+        }
+    }
+
+    /**
+     * 領取並送出一批通知，回傳領取筆數
+     */
+    int drainBatch() throws InterruptedException {
+        List<NotificationOutbox.Entry> entries = outbox.claim(batchSize, leaseSeconds);
+        if (entries.isEmpty()) {
+            return 0;
+        }
+
+        List<Future<?>> futures = new ArrayList<>(entries.size());
+        for (NotificationOutbox.Entry entry : entries) {
+            futures.add(executor.submit(() -> {
+                permits.acquire();
+                try {
+                    sink.send(entry.notification());
+                } finally {
+                    permits.release();
+                }
+                return null;
+            }));
+        }
+
+        // 整批共用同一個期限：等待時間不會隨筆數累加而超過租約
+        long deadline = System.nanoTime() + sendTimeoutNanos;
+        List<Long> sentIds = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i++) {
+            NotificationOutbox.Entry entry = entries.get(i);
+            Future<?> future = futures.get(i);
+            try {
+                future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                sentIds.add(entry.id());
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                recordFailure(entry, String.valueOf(cause.getMessage()));
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                recordFailure(entry, "Send timed out");
+            }
+        }
+        outbox.markSent(sentIds);
+        sentCounter.increment(sentIds.size());
+        return entries.size();
+    }
+
+    private void recordFailure(NotificationOutbox.Entry entry, String error) {
+        outbox.markFailed(entry.id(), error, maxAttempts, backoffSeconds);
+        if (entry.attempts() + 1 >= maxAttempts) {
+            failedCounter.increment();
+            log.warn("通知 {} 已達重試上限: {}", entry.id(), error);
+        } else {
+            retryCounter.increment();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.close();
+    }
+}
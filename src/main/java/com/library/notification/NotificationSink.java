@@ -0,0 +1,10 @@
+package com.library.notification;
+
+/**
+ * 通知的實際送出方式，依 notification.sink 設定選擇（log / file / http）
+ * 送出失敗時丟出例外，由 outbox worker 依退避策略重試
+ */
+public interface NotificationSink {
+
+    void send(Notification notification) throws Exception;
+}
@@ -0,0 +1,34 @@
+package com.library.notification;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * 以 transactional outbox 實作的 NotificationDispatcher
+ * 只寫入 notification_outbox，不在呼叫端的執行緒上做任何 I/O
+ */
+@Service
+public class OutboxNotificationDispatcher implements NotificationDispatcher {
+
+    private final NotificationOutbox outbox;
+
+    public OutboxNotificationDispatcher(NotificationOutbox outbox) {
+        this.outbox = outbox;
+    }
+
+    @Override
+    @Transactional
+    public void dispatch(Notification notification) {
+        outbox.enqueue(List.of(notification));
+    }
+
+    @Override
+    @Transactional
+    public void dispatchAll(List<Notification> notifications) {
+        if (!notifications.isEmpty()) {
+            outbox.enqueue(notifications);
+        }
+    }
+}
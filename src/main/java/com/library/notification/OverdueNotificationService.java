@@ -1,95 +1,159 @@
 package com.library.notification;
 
-import com.library.loan.Loan;
 import com.library.loan.LoanRepository;
-import com.library.user.User;
-import com.library.book.Book;
-import org.springframework.beans.factory.annotation.Autowired;
+import com.library.scheduling.JobLeaseService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 public class OverdueNotificationService {
+    private static final Logger log = LoggerFactory.getLogger(OverdueNotificationService.class);
 
-    @Autowired
-    private LoanRepository loanRepository;
+    static final String KIND_OVERDUE = "OVERDUE";
+    static final String KIND_DUE_SOON = "OVERDUE_SOON";
+    static final String JOB_NAME = "overdue-notification";
+    private static final Duration LOCK_AT_MOST_FOR = Duration.ofMinutes(10);
 
-    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private final LoanRepository loanRepository;
+    private final NotificationDispatcher notificationDispatcher;
+    private final JobLeaseService jobLeaseService;
+    private final Duration lockAtLeastFor;
+    private final int chunkSize;
+
+    // 進度指標
+    private final Timer runTimer;
+    private final Counter chunkCounter;
+    private final Counter overdueCounter;
+    private final Counter dueSoonCounter;
+    private final AtomicLong runProcessed = new AtomicLong();
+    private final AtomicLong lastLoanId = new AtomicLong();
+
+    public OverdueNotificationService(LoanRepository loanRepository, NotificationDispatcher notificationDispatcher,
+                                      JobLeaseService jobLeaseService, MeterRegistry meterRegistry,
+                                      @Value("${overdue.check.interval:1}") int checkIntervalMinutes,
+                                      @Value("${notification.chunk-size:500}") int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("notification.chunk-size must be positive");
+        }
+        this.loanRepository = loanRepository;
+        this.notificationDispatcher = notificationDispatcher;
+        this.jobLeaseService = jobLeaseService;
+        // 租約保留到下個週期前，避免其他節點在同一個週期內重複執行
+        this.lockAtLeastFor = Duration.ofMinutes(checkIntervalMinutes).minusSeconds(5);
+        this.chunkSize = chunkSize;
+        this.runTimer = Timer.builder("library.notification.overdue.run")
+            .description("Duration of one overdue check run")
+            .register(meterRegistry);
+        this.chunkCounter = Counter.builder("library.notification.overdue.chunks")
+            .description("Chunks processed by the overdue check")
+            .register(meterRegistry);
+        this.overdueCounter = Counter.builder("library.notification.overdue.notified")
+            .description("Notifications sent by the overdue check")
+            .tag("type", "overdue")
+            .register(meterRegistry);
+        this.dueSoonCounter = Counter.builder("library.notification.overdue.notified")
+            .description("Notifications sent by the overdue check")
+            .tag("type", "due_soon")
+            .register(meterRegistry);
+        meterRegistry.gauge("library.notification.overdue.run.processed", runProcessed);
+        meterRegistry.gauge("library.notification.overdue.run.last.loan.id", lastLoanId);
+    }
 
     /**
      * 檢查逾期書籍並發送通知
-     * 每分鐘執行一次
+     * 依 overdue.check.interval（分鐘，預設 1）執行；多節點部署時透過 JobLeaseService 確保每個週期只有一個節點處理同一個 shard
+     * 通知交給 NotificationDispatcher 排入 outbox，不在排程執行緒上送出
      */
-    @org.springframework.scheduling.annotation.Scheduled(fixedRate = 60000) // 10 秒 = 10000 毫秒
+    @org.springframework.scheduling.annotation.Scheduled(fixedRateString = "#{${overdue.check.interval:1} * 60 * 1000}")
     public void checkOverdueBooks() {
-        try {
-            // 查詢所有未歸還且到期日在未來5天內或已逾期的借閱記錄
-            List<Loan> loansToNotify = loanRepository.findLoansToNotify();
-            
-            if (loansToNotify.isEmpty()) {
-                System.out.println("[" + LocalDateTime.now().format(DATE_FORMATTER) + "] 逾期檢查完成 - 無需要通知的書籍");
-                return;
-            }
+        runTimer.record(() -> {
+            try {
+                runProcessed.set(0);
+                lastLoanId.set(0);
+                int executed = jobLeaseService.runSharded(JOB_NAME, LOCK_AT_MOST_FOR, lockAtLeastFor, this::checkOverdueBooks);
+                if (executed == 0) {
+                    // 其他節點已在本週期執行
+                    return;
+                }
 
-            System.out.println("[" + LocalDateTime.now().format(DATE_FORMATTER) + "] 發現 " + loansToNotify.size() + " 筆需要通知的借閱記錄");
+                if (runProcessed.get() == 0) {
+                    log.info("逾期檢查完成 - 無需要通知的書籍");
+                } else {
+                    log.info("逾期檢查完成 - 共 {} 筆需要通知的借閱記錄", runProcessed.get());
+                }
 
-            for (Loan loan : loansToNotify) {
-                sendOverdueNotification(loan);
+            } catch (Exception e) {
+                log.error("逾期檢查發生錯誤", e);
             }
-
-        } catch (Exception e) {
-            System.err.println("[" + LocalDateTime.now().format(DATE_FORMATTER) + "] 逾期檢查發生錯誤: " + e.getMessage());
-            e.printStackTrace();
-        }
+        });
     }
 
     /**
-     * 發送逾期通知
+     * 檢查單一 shard（loan id % shards = shard）
+     * 依 loan id 做 keyset 分頁，每個 chunk 是一次獨立的短查詢（不會在整個執行期間持有交易）
      */
-    private void sendOverdueNotification(Loan loan) {
-        try {
-            // 獲取用戶資訊
-            User user = loan.getUser();
-            if (user == null) {
-                System.err.println("用戶不存在");
-                return;
-            }
+    void checkOverdueBooks(int shard) {
+        // 查詢所有未歸還且到期日在未來5天內或已逾期的借閱記錄
+        LocalDate today = LocalDate.now();
+        LocalDate until = today.plusDays(5);
+        int shards = jobLeaseService.shards();
 
-            // 獲取書籍資訊 - 通過 inventoryItem 獲取
-            Book book = loan.getInventoryItem().getBook();
-            if (book == null) {
-                System.err.println("書籍不存在");
-                return;
+        long afterId = 0;
+        while (true) {
+            List<Object[]> chunk = loanRepository.findLoansToNotifyAfter(until, afterId, shards, shard, chunkSize);
+            List<Notification> notifications = new ArrayList<>(chunk.size());
+            for (Object[] row : chunk) {
+                notifications.add(toNotification(row, today));
             }
-
-            // 格式化到期日期
-            String dueDate = loan.getDueDate().format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
-            
-            // 計算今天與到期日的天數差
-            LocalDate today = LocalDate.now();
-            LocalDate dueDateLocal = loan.getDueDate();
-            long daysUntilDue = java.time.temporal.ChronoUnit.DAYS.between(today, dueDateLocal);
-
-            // 根據天數差決定通知內容
-            if (daysUntilDue < 0) {
-                // 已經逾期
-                System.out.println("使用者: " + user.getUsername() + 
-                                 ", 你借的書:" + book.getTitle() + 
-                                 "已經逾期，請記得還書。原定還書日: " + dueDate);
-            } else if (daysUntilDue <= 5) {
-                // 即將逾期（5天內）
-                System.out.println("使用者: " + user.getUsername() + 
-                                 ", 你借的書:" + book.getTitle() + 
-                                 "即將逾期，請記得還書。原定還書日: " + dueDate);
+            notificationDispatcher.dispatchAll(notifications);
+            if (!chunk.isEmpty()) {
+                afterId = ((Number) chunk.get(chunk.size() - 1)[0]).longValue();
+                chunkCounter.increment();
+                runProcessed.addAndGet(chunk.size());
+                lastLoanId.set(afterId);
             }
+            if (chunk.size() < chunkSize) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * 組成逾期通知；同一筆借閱同一種通知每天只會排入一次
+     * row：[0] loanId, [1] username, [2] title, [3] dueDate, [4] daysUntilDue
+     */
+    private Notification toNotification(Object[] row, LocalDate today) {
+        long loanId = ((Number) row[0]).longValue();
+        String username = (String) row[1];
+        String title = (String) row[2];
+        String dueDate = (String) row[3];
+        long daysUntilDue = ((Number) row[4]).longValue();
 
-        } catch (Exception e) {
-            System.err.println("發送逾期通知時發生錯誤: " + e.getMessage());
-            e.printStackTrace();
+        // 根據天數差決定通知內容
+        String kind;
+        String message;
+        if (daysUntilDue < 0) {
+            // 已經逾期
+            kind = KIND_OVERDUE;
+            message = "使用者: " + username + ", 你借的書:" + title + "已經逾期，請記得還書。原定還書日: " + dueDate;
+            overdueCounter.increment();
+        } else {
+            // 即將逾期（5天內）
+            kind = KIND_DUE_SOON;
+            message = "使用者: " + username + ", 你借的書:" + title + "即將逾期，請記得還書。原定還書日: " + dueDate;
+            dueSoonCounter.increment();
         }
+        return new Notification(loanId, kind, username, message, kind + ":" + loanId + ":" + today);
     }
 }
@@ -0,0 +1,94 @@
+package com.library.scheduling;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntConsumer;
+
+/**
+ * 排程工作的叢集鎖（scheduled_job_leases）
+ * 多個節點同時觸發同一個排程時，只有取得租約的節點會執行；租約至少保留 lockAtLeastFor，
+ * 避免各節點觸發時間錯開時在同一個週期內重複執行，最多保留 lockAtMostFor，節點當機後租約會自動過期
+ */
+@Component
+public class JobLeaseService {
+
+    // 租約不存在或已過期（或本來就是自己的）才會寫入
+    private static final String ACQUIRE = """
+        INSERT INTO scheduled_job_leases (job_name, owner, locked_at, lease_until)
+        VALUES (?, ?, now(), now() + make_interval(secs => ?))
+        ON CONFLICT (job_name) DO UPDATE SET
+            owner = EXCLUDED.owner,
+            locked_at = EXCLUDED.locked_at,
+            lease_until = EXCLUDED.lease_until
+        WHERE scheduled_job_leases.lease_until <= now()
+           OR scheduled_job_leases.owner = EXCLUDED.owner
+        """;
+
+    private static final String RELEASE = """
+        UPDATE scheduled_job_leases
+        SET lease_until = GREATEST(now(), locked_at + make_interval(secs => ?))
+        WHERE job_name = ? AND owner = ?
+        """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String nodeId;
+    private final int shards;
+
+    public JobLeaseService(JdbcTemplate jdbcTemplate,
+                           @Value("${scheduling.node-id:}") String nodeId,
+                           @Value("${scheduling.shards:1}") int shards) {
+        if (shards <= 0) {
+            throw new IllegalArgumentException("scheduling.shards must be positive");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.nodeId = nodeId == null || nodeId.isBlank()
+                ? ProcessHandle.current().pid() + "-" + UUID.randomUUID()
+                : nodeId;
+        this.shards = shards;
+    }
+
+    /**
+     * 取得租約後執行 job，回傳是否有執行
+     */
+    public boolean runExclusively(String jobName, Duration lockAtMostFor, Duration lockAtLeastFor, Runnable job) {
+        int acquired = jdbcTemplate.update(ACQUIRE, jobName, nodeId, lockAtMostFor.toSeconds());
+        if (acquired == 0) {
+            return false;
+        }
+        try {
+            job.run();
+        } finally {
+            jdbcTemplate.update(RELEASE, Math.max(0, lockAtLeastFor.toSeconds()), jobName, nodeId);
+        }
+        return true;
+    }
+
+    /**
+     * 將 job 切成 scheduling.shards 份（各自一個租約 jobName#shard），逐一嘗試取得並執行，回傳本節點執行的 shard 數
+     * 各節點從隨機的 shard 開始，多個節點可以同時處理不同的 shard
+     */
+    public int runSharded(String jobName, Duration lockAtMostFor, Duration lockAtLeastFor, IntConsumer shardJob) {
+        int start = ThreadLocalRandom.current().nextInt(shards);
+        int executed = 0;
+        for (int i = 0; i < shards; i++) {
+            int shard = (start + i) % shards;
+            if (runExclusively(jobName + "#" + shard, lockAtMostFor, lockAtLeastFor, () -> shardJob.accept(shard))) {
+                executed++;
+            }
+        }
+        return executed;
+    }
+
+    public int shards() {
+        return shards;
+    }
+
+    public String nodeId() {
+        return nodeId;
+    }
+}
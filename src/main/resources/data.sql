@@ -5,10 +5,23 @@
 -- 1) 類型與規則：BOOK/JOURNAL
 INSERT INTO book_categories (category, rule_max_concurrent, rule_loan_period_days)
 VALUES
-  ('BOOK',    5, 30),
-  ('JOURNAL', 10, 30)
+  ('BOOK',    10, 30),
+  ('JOURNAL', 5,  30)
 ON CONFLICT (category) DO NOTHING;
 
+-- 一次性資料修正：舊版種子資料的 BOOK / JOURNAL 上限互換（BOOK=5、JOURNAL=10）
+-- 只在 data_migrations 第一次寫入此項目時執行，之後館員自行調整的上限不會在重新啟動時被覆寫
+WITH applied AS (
+  INSERT INTO data_migrations (name) VALUES ('swap-book-journal-limits')
+  ON CONFLICT (name) DO NOTHING
+  RETURNING name
+)
+UPDATE book_categories
+SET rule_max_concurrent = CASE category WHEN 'BOOK' THEN 10 ELSE 5 END
+WHERE EXISTS (SELECT 1 FROM applied)
+  AND ((category = 'BOOK' AND rule_max_concurrent = 5)
+    OR (category = 'JOURNAL' AND rule_max_concurrent = 10));
+
 -- 2) 使用者：館員與一般會員
 -- 密碼範例：
 --   admin / admin123  -> $2a$10$1bVapA0u8BFOY5sJeW8DYuq/7K0m6.8fJqC6ej9IfDP8YtqS9kkOi
@@ -90,3 +103,11 @@ VALUES
   ((SELECT id FROM books WHERE title='This is JOURNAL'),       (SELECT id FROM branches WHERE branch_name='West'),        'AVAILABLE', 'JOURNAL010'),
   ((SELECT id FROM books WHERE title='This is JOURNAL'),       (SELECT id FROM branches WHERE branch_name='West'),        'AVAILABLE', 'JOURNAL011')
 ON CONFLICT (barcode) DO NOTHING;
+
+-- 初始化各分館館藏計數（之後由應用程式維護，AvailabilityReconciliationJob 定期對帳）
+-- 每次啟動都會執行：只補上缺少的計數，不覆寫既有計數，避免與進行中的借還書競爭
+INSERT INTO book_branch_availability (book_id, branch_id, total, available)
+SELECT book_id, branch_id, COUNT(*), COUNT(*) FILTER (WHERE status = 'AVAILABLE')
+FROM book_copies
+GROUP BY book_id, branch_id
+ON CONFLICT (book_id, branch_id) DO NOTHING;
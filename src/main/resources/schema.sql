@@ -50,6 +50,11 @@ CREATE INDEX IF NOT EXISTS idx_books_title_lower  ON books (LOWER(title));
 CREATE INDEX IF NOT EXISTS idx_books_author_lower ON books (LOWER(author));
 CREATE INDEX IF NOT EXISTS idx_books_year         ON books (publish_year);
 
+-- 模糊搜尋索引（pg_trgm）：支援 LOWER(title/author) LIKE '%keyword%' 與相似度排序
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE INDEX IF NOT EXISTS idx_books_title_trgm  ON books USING GIN (LOWER(title) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_books_author_trgm ON books USING GIN (LOWER(author) gin_trgm_ops);
+
 
 
 -- === BRANCHES（分館）===
@@ -78,6 +83,18 @@ CREATE TABLE IF NOT EXISTS book_copies (
 -- 彙總/查詢常用索引（依 書/分館/狀態）
 CREATE INDEX IF NOT EXISTS idx_copies_bbs ON book_copies (book_id, branch_id, status);
 
+-- 條碼序號：每次 nextval 預先配置一個區塊（INCREMENT BY = 區塊大小），由應用程式在記憶體中逐一發放
+CREATE SEQUENCE IF NOT EXISTS book_copy_barcode_seq START WITH 1 INCREMENT BY 100;
+
+-- === BOOK BRANCH AVAILABILITY（各分館館藏計數，借還書/新增/刪除副本時於同一交易內維護，定期與 book_copies 對帳）===
+CREATE TABLE IF NOT EXISTS book_branch_availability (
+    book_id   BIGINT NOT NULL REFERENCES books(id),                              -- 書目 FK
+    branch_id BIGINT NOT NULL REFERENCES branches(id),                           -- 分館 FK
+    total     INT    NOT NULL DEFAULT 0,                                         -- 副本總數（同 book_copies 筆數）
+    available INT    NOT NULL DEFAULT 0,                                         -- 可借副本數（status = AVAILABLE）
+    PRIMARY KEY (book_id, branch_id)
+);
+
 
 
 -- === LOANS（借閱紀錄）===
@@ -108,6 +125,49 @@ ALTER TABLE loans
 -- 常用查詢索引：查使用者當前借閱 / 到期清單
 CREATE INDEX IF NOT EXISTS idx_loans_user_active ON loans (borrowed_user_id, returned_at);
 CREATE INDEX IF NOT EXISTS idx_loans_due_date    ON loans (due_date);
+CREATE INDEX IF NOT EXISTS idx_loans_active_due  ON loans (due_date, id) WHERE returned_at IS NULL;
+CREATE INDEX IF NOT EXISTS idx_loans_active_id   ON loans (id) INCLUDE (due_date) WHERE returned_at IS NULL;
+
+-- === LOAN NOTIFICATIONS（通知狀態：已通知過的借閱記錄，避免重複通知）===
+CREATE TABLE IF NOT EXISTS loan_notifications (
+    loan_id     BIGINT NOT NULL REFERENCES loans(id),                             -- 借閱紀錄 FK
+    kind        TEXT   NOT NULL,                                                  -- 通知類型（DUE_SOON 等）
+    notified_at TIMESTAMPTZ DEFAULT now(),                                        -- 通知時間
+    PRIMARY KEY (loan_id, kind)
+);
+
+-- === NOTIFICATION OUTBOX（待發送通知，與業務資料同一交易寫入，由背景 worker 發送）===
+CREATE TABLE IF NOT EXISTS notification_outbox (
+    id              BIGSERIAL PRIMARY KEY,                                        -- 通知 ID
+    loan_id         BIGINT REFERENCES loans(id),                                  -- 相關借閱紀錄（可為 NULL）
+    kind            TEXT NOT NULL,                                                -- 通知類型（DUE_SOON / OVERDUE 等）
+    recipient       TEXT NOT NULL,                                                -- 收件者
+    message         TEXT NOT NULL,                                                -- 通知內容
+    dedupe_key      TEXT UNIQUE,                                                  -- 去重 key，相同 key 只會排入一次
+    status          TEXT NOT NULL DEFAULT 'PENDING' CHECK (status IN ('PENDING','SENT','FAILED')), -- 發送狀態
+    attempts        INT  NOT NULL DEFAULT 0,                                      -- 已嘗試次數
+    next_attempt_at TIMESTAMPTZ NOT NULL DEFAULT now(),                           -- 下次可發送時間（退避 / 領取租約）
+    last_error      TEXT,                                                         -- 最後一次失敗原因
+    created_at      TIMESTAMPTZ DEFAULT now(),
+    sent_at         TIMESTAMPTZ
+);
+
+-- === SCHEDULED JOB LEASES（排程工作的叢集鎖，確保每個週期只有一個節點執行）===
+CREATE TABLE IF NOT EXISTS scheduled_job_leases (
+    job_name    TEXT PRIMARY KEY,                                                 -- 排程名稱（分片時為 name#shard）
+    owner       TEXT NOT NULL,                                                    -- 持有租約的節點
+    locked_at   TIMESTAMPTZ NOT NULL,                                             -- 取得租約時間
+    lease_until TIMESTAMPTZ NOT NULL                                              -- 租約到期時間
+);
+
+-- === DATA MIGRATIONS（data.sql 中只能執行一次的資料修正）===
+CREATE TABLE IF NOT EXISTS data_migrations (
+    name        TEXT PRIMARY KEY,                                                 -- 修正項目名稱
+    applied_at  TIMESTAMPTZ NOT NULL DEFAULT now()                                -- 執行時間
+);
+
+-- worker 領取待發送通知用
+CREATE INDEX IF NOT EXISTS idx_outbox_pending ON notification_outbox (next_attempt_at, id) WHERE status = 'PENDING';
 
 
 
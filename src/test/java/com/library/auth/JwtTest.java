@@ -1,12 +1,15 @@
 package com.library.auth;
 
 import com.library.config.JwtConfig;
+import io.jsonwebtoken.JwtException;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ActiveProfiles;
 
 import javax.crypto.SecretKey;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -34,4 +37,52 @@ public class JwtTest {
         assertEquals("testuser", jwtUtil.extractUsername(token));
         assertEquals("Member", jwtUtil.extractRole(token));
     }
+
+    @Test
+    public void testParsePrincipalAndCache() {
+        // 測試 單次解析取得 userId, role, 到期時間
+        String token = jwtUtil.generateToken(2L, "cacheuser", "Librarian");
+        JwtPrincipal principal = jwtUtil.parsePrincipal(token);
+        assertEquals(2L, principal.userId());
+        assertEquals("Librarian", principal.role());
+        assertFalse(principal.isExpired(Instant.now()));
+
+        // 測試 快取命中時不會再解析 token
+        JwtPrincipalCache cache = new JwtPrincipalCache(10);
+        AtomicInteger parseCount = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            JwtPrincipal cached = cache.computeIfAbsent(token, t -> {
+                parseCount.incrementAndGet();
+                return jwtUtil.parsePrincipal(t);
+            });
+            assertEquals(principal, cached);
+        }
+        assertEquals(1, parseCount.get());
+
+        // 測試 無效 token 不會寫入快取
+        assertThrows(JwtException.class,
+                () -> cache.computeIfAbsent(token + "x", jwtUtil::parsePrincipal));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testCacheExpiresWithToken() {
+        // 測試 快取項目在 token 的 exp 到期，之後會重新驗證
+        JwtPrincipalCache cache = new JwtPrincipalCache(10);
+        AtomicInteger parseCount = new AtomicInteger();
+        JwtPrincipal expired = new JwtPrincipal(3L, "Member", Instant.now().minusSeconds(1));
+        for (int i = 0; i < 2; i++) {
+            cache.computeIfAbsent("expired-token", t -> {
+                parseCount.incrementAndGet();
+                return expired;
+            });
+        }
+        assertEquals(2, parseCount.get());
+
+        // 測試 max-size = 0 時不快取
+        JwtPrincipalCache disabled = new JwtPrincipalCache(0);
+        String token = jwtUtil.generateToken(4L, "nocache", "Member");
+        disabled.computeIfAbsent(token, jwtUtil::parsePrincipal);
+        assertEquals(0, disabled.size());
+    }
 }
@@ -0,0 +1,126 @@
+package com.library.auth;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.library.config.RestTemplateConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 以 wiremock/mappings 中的 stub 測試館員驗證的逾時、快取與 circuit breaker
+ */
+class LibrarianVerificationServiceImplTest {
+
+    private WireMockServer wireMock;
+    private RestTemplate restTemplate;
+
+    @BeforeEach
+    void setUp() {
+        wireMock = new WireMockServer(options().dynamicPort().usingFilesUnderDirectory("wiremock"));
+        wireMock.start();
+        restTemplate = RestTemplateConfig.create(false, Duration.ofMillis(500), Duration.ofMillis(200));
+    }
+
+    @AfterEach
+    void tearDown() {
+        wireMock.stop();
+    }
+
+    @Test
+    void testVerifyLibrarian_SuccessIsCached() {
+        // 測試 verify.json（Authorization: todo）驗證成功，第二次直接使用快取
+        LibrarianVerificationServiceImpl service = newService("/", "todo", 5);
+
+        assertThat(service.verifyLibrarian("E001")).isTrue();
+        assertThat(service.verifyLibrarian("E001")).isTrue();
+
+        wireMock.verify(1, getRequestedFor(urlEqualTo("/")));
+    }
+
+    @Test
+    void testVerifyLibrarian_CacheExpiresAfterTtl() {
+        // 測試快取在 cache-ttl（60 秒）後失效，重新呼叫外部 API
+        AtomicReference<Instant> now = new AtomicReference<>(Instant.parse("2025-01-01T00:00:00Z"));
+        LibrarianVerificationServiceImpl service = newService("/", "todo", 5, new Clock() {
+            @Override
+            public ZoneId getZone() {
+                return ZoneOffset.UTC;
+            }
+
+            @Override
+            public Clock withZone(ZoneId zone) {
+                return this;
+            }
+
+            @Override
+            public Instant instant() {
+                return now.get();
+            }
+        });
+
+        assertThat(service.verifyLibrarian("E006")).isTrue();
+        now.set(now.get().plusSeconds(59));
+        assertThat(service.verifyLibrarian("E006")).isTrue();
+        wireMock.verify(1, getRequestedFor(urlEqualTo("/")));
+
+        now.set(now.get().plusSeconds(2));
+        assertThat(service.verifyLibrarian("E006")).isTrue();
+        wireMock.verify(2, getRequestedFor(urlEqualTo("/")));
+    }
+
+    @Test
+    void testVerifyLibrarian_RejectedByExternalApi() {
+        // 測試 Authorization 不符（WireMock 回 404）: 驗證失敗，但不算外部 API 故障
+        LibrarianVerificationServiceImpl service = newService("/", "wrong", 1);
+
+        assertThat(service.verifyLibrarian("E002")).isFalse();
+        assertThat(service.circuitState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void testVerifyLibrarian_TimeoutOpensCircuit() {
+        // 測試外部 API 回應過慢: 讀取逾時回 503，連續 2 次後 circuit 打開，之後不再呼叫外部 API
+        wireMock.stubFor(get(urlEqualTo("/slow")).willReturn(ok().withFixedDelay(1000)));
+        LibrarianVerificationServiceImpl service = newService("/slow", "todo", 2);
+
+        assertThatThrownBy(() -> service.verifyLibrarian("E003")).isInstanceOf(ResponseStatusException.class);
+        assertThatThrownBy(() -> service.verifyLibrarian("E004")).isInstanceOf(ResponseStatusException.class);
+        assertThat(service.circuitState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        assertThatThrownBy(() -> service.verifyLibrarian("E005"))
+            .isInstanceOf(ResponseStatusException.class)
+            .hasMessageContaining("temporarily unavailable");
+        wireMock.verify(2, getRequestedFor(urlEqualTo("/slow")));
+    }
+
+    private LibrarianVerificationServiceImpl newService(String path, String authHeader, int failureThreshold) {
+        return newService(path, authHeader, failureThreshold, Clock.systemUTC());
+    }
+
+    private LibrarianVerificationServiceImpl newService(String path, String authHeader, int failureThreshold, Clock clock) {
+        return new LibrarianVerificationServiceImpl(
+            restTemplate,
+            wireMock.baseUrl() + path,
+            authHeader,
+            Duration.ofSeconds(60),
+            10,
+            100,
+            new CircuitBreaker(failureThreshold, Duration.ofSeconds(30), Clock.systemUTC()),
+            clock
+        );
+    }
+}
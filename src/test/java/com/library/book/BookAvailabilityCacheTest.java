@@ -0,0 +1,98 @@
+package com.library.book;
+
+import com.library.book.dto.BookDtos;
+import com.library.inventory.BookAvailabilityChangedEvent;
+import com.library.inventory.InventoryItemRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BookAvailabilityCacheTest {
+
+    @Mock
+    private InventoryItemRepository inventoryItemRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+    private BookAvailabilityCache cache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new BookAvailabilityCache(inventoryItemRepository, meterRegistry, 1000, 300);
+    }
+
+    @Test
+    void testGetAll_LoadsMissesInOneQueryAndServesHitsFromCache() {
+        when(inventoryItemRepository.findAvailabilityByBookIds(anyCollection())).thenReturn(List.of(
+                new Object[]{1L, 10L, "Main Library", 3L, 2L},
+                new Object[]{1L, 11L, "East Branch", 1L, 0L}));
+
+        Map<Long, List<BookDtos.BranchAvailability>> first = cache.getAll(List.of(1L, 2L));
+        Map<Long, List<BookDtos.BranchAvailability>> second = cache.getAll(List.of(1L, 2L));
+
+        // 沒有副本的書目也會被快取，第二次完全命中
+        assertThat(first.get(1L)).containsExactly(
+                new BookDtos.BranchAvailability(10L, "Main Library", 3, 2),
+                new BookDtos.BranchAvailability(11L, "East Branch", 1, 0));
+        assertThat(first.get(2L)).isEmpty();
+        assertThat(second).isEqualTo(first);
+        verify(inventoryItemRepository, times(1)).findAvailabilityByBookIds(anyCollection());
+        assertThat(meterRegistry.get("cache.gets").tag("result", "hit").functionCounter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void testOnAvailabilityChanged_ReloadsOnlyInvalidatedBooks() {
+        when(inventoryItemRepository.findAvailabilityByBookIds(anyCollection()))
+                .thenReturn(List.<Object[]>of(new Object[]{1L, 10L, "Main Library", 3L, 2L}))
+                .thenReturn(List.<Object[]>of(new Object[]{1L, 10L, "Main Library", 3L, 1L}));
+        cache.getAll(List.of(1L, 2L));
+
+        cache.onAvailabilityChanged(new BookAvailabilityChangedEvent(Set.of(1L)));
+        Map<Long, List<BookDtos.BranchAvailability>> reloaded = cache.getAll(List.of(1L, 2L));
+
+        assertThat(reloaded.get(1L)).containsExactly(new BookDtos.BranchAvailability(10L, "Main Library", 3, 1));
+        verify(inventoryItemRepository).findAvailabilityByBookIds(List.of(1L));
+        assertThat(meterRegistry.get("library.availability.cache.invalidations").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void testGetAll_InvalidationDuringLoadDropsStaleResult() {
+        // 第一次讀取進行中時，另一個交易 commit 並發布失效事件：讀到的舊資料不能留在快取
+        when(inventoryItemRepository.findAvailabilityByBookIds(anyCollection()))
+                .thenAnswer(invocation -> {
+                    cache.onAvailabilityChanged(new BookAvailabilityChangedEvent(Set.of(1L)));
+                    return List.<Object[]>of(new Object[]{1L, 10L, "Main Library", 3L, 2L});
+                })
+                .thenReturn(List.<Object[]>of(new Object[]{1L, 10L, "Main Library", 3L, 1L}));
+
+        Map<Long, List<BookDtos.BranchAvailability>> first = cache.getAll(List.of(1L));
+        Map<Long, List<BookDtos.BranchAvailability>> second = cache.getAll(List.of(1L));
+
+        assertThat(first.get(1L)).containsExactly(new BookDtos.BranchAvailability(10L, "Main Library", 3, 2));
+        assertThat(second.get(1L)).containsExactly(new BookDtos.BranchAvailability(10L, "Main Library", 3, 1));
+        verify(inventoryItemRepository, times(2)).findAvailabilityByBookIds(anyCollection());
+    }
+
+    @Test
+    void testGetAll_DisabledCacheAlwaysQueries() {
+        BookAvailabilityCache disabled = new BookAvailabilityCache(inventoryItemRepository, meterRegistry, 0, 300);
+        when(inventoryItemRepository.findAvailabilityByBookIds(anyCollection())).thenReturn(List.of());
+
+        disabled.getAll(List.of(1L));
+        disabled.getAll(List.of(1L));
+
+        verify(inventoryItemRepository, times(2)).findAvailabilityByBookIds(anyCollection());
+    }
+}
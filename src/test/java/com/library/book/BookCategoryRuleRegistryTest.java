@@ -0,0 +1,109 @@
+package com.library.book;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BookCategoryRuleRegistryTest {
+
+    @Mock
+    private BookCategoryRepository bookCategoryRepository;
+
+    private BookCategoryRuleRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new BookCategoryRuleRegistry(bookCategoryRepository, Duration.ofSeconds(60), Clock.systemUTC());
+    }
+
+    @Test
+    void testGetRule_LoadsOnceThenServesFromSnapshot() {
+        when(bookCategoryRepository.findAll()).thenReturn(List.of(
+                new BookCategory(2L, "BOOK", 10, 30),
+                new BookCategory(3L, "JOURNAL", 5, 14)
+        ));
+
+        // 多次查詢只會載入一次
+        assertThat(registry.getRule(2L).maxConcurrent()).isEqualTo(10);
+        assertThat(registry.getRule(3L).loanPeriodDays()).isEqualTo(14);
+        assertThat(registry.getRule(2L).category()).isEqualTo("BOOK");
+
+        verify(bookCategoryRepository, times(1)).findAll();
+    }
+
+    @Test
+    void testGetRule_UnknownCategoryReloadsAtMostOncePerInterval() {
+        when(bookCategoryRepository.findAll())
+                .thenReturn(List.of(new BookCategory(2L, "BOOK", 10, 30)))
+                .thenReturn(List.of(new BookCategory(2L, "BOOK", 10, 30), new BookCategory(4L, "MAGAZINE", 3, 7)));
+        AtomicReference<Instant> now = new AtomicReference<>(Instant.parse("2025-01-01T00:00:00Z"));
+        BookCategoryRuleRegistry ticking = new BookCategoryRuleRegistry(bookCategoryRepository, Duration.ofSeconds(60), clock(now));
+
+        assertThat(ticking.getRule(2L).maxConcurrent()).isEqualTo(10);
+
+        // 最小間隔內重複查詢不存在的分類，不會再查詢資料庫
+        for (int i = 0; i < 3; i++) {
+            assertThatThrownBy(() -> ticking.getRule(4L)).isInstanceOf(IllegalStateException.class);
+        }
+        verify(bookCategoryRepository, times(1)).findAll();
+
+        // 超過最小間隔後才重新載入，取得新增的分類
+        now.set(now.get().plus(BookCategoryRuleRegistry.MISS_RELOAD_INTERVAL));
+        assertThat(ticking.getRule(4L).category()).isEqualTo("MAGAZINE");
+        verify(bookCategoryRepository, times(2)).findAll();
+    }
+
+    @Test
+    void testSnapshot_ReloadsAfterRefreshInterval() {
+        when(bookCategoryRepository.findAll())
+                .thenReturn(List.of(new BookCategory(2L, "BOOK", 5, 30)))
+                .thenReturn(List.of(new BookCategory(2L, "BOOK", 10, 30)));
+        AtomicReference<Instant> now = new AtomicReference<>(Instant.parse("2025-01-01T00:00:00Z"));
+        BookCategoryRuleRegistry expiring = new BookCategoryRuleRegistry(bookCategoryRepository, Duration.ofSeconds(60), clock(now));
+
+        // 間隔內使用快照
+        assertThat(expiring.getRule(2L).maxConcurrent()).isEqualTo(5);
+        now.set(now.get().plusSeconds(59));
+        assertThat(expiring.getRule(2L).maxConcurrent()).isEqualTo(5);
+        verify(bookCategoryRepository, times(1)).findAll();
+
+        // 直接以 SQL 修改規則後，超過間隔的快照會重新載入
+        now.set(now.get().plusSeconds(2));
+        assertThat(expiring.getRule(2L).maxConcurrent()).isEqualTo(10);
+        verify(bookCategoryRepository, times(2)).findAll();
+    }
+
+    private static Clock clock(AtomicReference<Instant> now) {
+        return new Clock() {
+            @Override
+            public ZoneId getZone() {
+                return ZoneOffset.UTC;
+            }
+
+            @Override
+            public Clock withZone(ZoneId zone) {
+                return this;
+            }
+
+            @Override
+            public Instant instant() {
+                return now.get();
+            }
+        };
+    }
+}
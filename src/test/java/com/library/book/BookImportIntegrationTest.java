@@ -0,0 +1,113 @@
+package com.library.book;
+
+import com.library.book.dto.BookDtos;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ActiveProfiles("dev")
+class BookImportIntegrationTest {
+
+    @Autowired
+    private BookImportService importService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private long categoryId;
+    private long branchId;
+    private String title;
+
+    @BeforeEach
+    void setUp() {
+        categoryId = jdbcTemplate.queryForObject("SELECT id FROM book_categories WHERE category = 'BOOK'", Long.class);
+        branchId = jdbcTemplate.queryForObject("SELECT id FROM branches WHERE branch_name = 'Main Library'", Long.class);
+        // 每個測試使用不同書名，避免與其他測試的資料互相影響；匯入時書名會正規化為小寫
+        title = "Import Test " + System.nanoTime();
+    }
+
+    @Test
+    void testImportBooks_InvalidReferencesAreReportedAndSkipped() throws Exception {
+        String csv = String.join("\n",
+                "title,author,publish_year,category_id,extra,branch_id,quantity",
+                title + ",Import Author,2024," + categoryId + ",," + branchId + ",2",
+                title + " bad category,Import Author,2024,999999,,,",
+                title + " bad branch,Import Author,2024," + categoryId + ",,999999,1",
+                "missing,columns");
+
+        BookDtos.ImportResponse response = importService.importBooks(stream(csv), BookImportService.Format.CSV);
+
+        // 標題列不計入 rowsRead
+        assertThat(response.rowsRead()).isEqualTo(4);
+        assertThat(response.rowsImported()).isEqualTo(1);
+        assertThat(response.booksUpserted()).isEqualTo(1);
+        assertThat(response.copiesCreated()).isEqualTo(2);
+        assertThat(response.errorCount()).isEqualTo(3);
+        assertThat(response.errors()).extracting(BookDtos.ImportError::line).containsExactlyInAnyOrder(3L, 4L, 5L);
+        assertThat(response.errors()).extracting(BookDtos.ImportError::message)
+                .contains("Category not found: 999999", "Branch not found: 999999");
+
+        assertThat(countBooks(title + " bad category")).isZero();
+        assertThat(countBooks(title + " bad branch")).isZero();
+    }
+
+    @Test
+    void testImportBooks_ReimportUpdatesBookAndAddsCopiesAndCounters() throws Exception {
+        String first = "{\"title\":\"" + title + "\",\"author\":\"Import Author\",\"publishYear\":2024,\"categoryId\":" + categoryId
+                + ",\"extra\":\"{}\",\"branchId\":" + branchId + ",\"quantity\":2}";
+        String second = "{\"title\":\"" + title + "\",\"author\":\"Import Author\",\"publishYear\":2024,\"categoryId\":" + categoryId
+                + ",\"extra\":\"{\\\"edition\\\":2}\",\"branchId\":" + branchId + ",\"quantity\":3}";
+
+        BookDtos.ImportResponse firstResponse = importService.importBooks(
+                stream(first + "\nnull\n"), BookImportService.Format.NDJSON);
+        BookDtos.ImportResponse secondResponse = importService.importBooks(
+                stream(second), BookImportService.Format.NDJSON);
+
+        // NDJSON 的 null 行只算該行錯誤，不會中斷匯入
+        assertThat(firstResponse.errorCount()).isEqualTo(1);
+        assertThat(firstResponse.errors().get(0).line()).isEqualTo(2);
+        assertThat(firstResponse.copiesCreated()).isEqualTo(2);
+
+        // 同一個 unique_book_key 再次匯入：更新書目，不新增書目，副本累加
+        assertThat(secondResponse.booksUpserted()).isEqualTo(1);
+        assertThat(secondResponse.copiesCreated()).isEqualTo(3);
+        assertThat(countBooks(title)).isEqualTo(1);
+
+        Long bookId = jdbcTemplate.queryForObject(
+                "SELECT id FROM books WHERE title = LOWER(?)", Long.class, title);
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT extra::text FROM books WHERE id = ?", String.class, bookId)).contains("edition");
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM book_copies WHERE book_id = ? AND branch_id = ? AND status = 'AVAILABLE'",
+                Integer.class, bookId, branchId)).isEqualTo(5);
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT COUNT(DISTINCT barcode) FROM book_copies WHERE book_id = ?", Integer.class, bookId)).isEqualTo(5);
+
+        // 館藏計數與副本一致
+        assertThat(jdbcTemplate.queryForList(
+                "SELECT total, available FROM book_branch_availability WHERE book_id = ? AND branch_id = ?",
+                bookId, branchId))
+                .singleElement()
+                .satisfies(row -> {
+                    assertThat(((Number) row.get("total")).intValue()).isEqualTo(5);
+                    assertThat(((Number) row.get("available")).intValue()).isEqualTo(5);
+                });
+    }
+
+    private int countBooks(String bookTitle) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM books WHERE title = LOWER(?)", Integer.class, bookTitle);
+    }
+
+    private static ByteArrayInputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,77 @@
+package com.library.book;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.library.book.dto.BookDtos;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BookImportServiceTest {
+
+    private final BookImportService importService = new BookImportService(null, null, new ObjectMapper(), null, null);
+
+    @Test
+    void testParseCsvLine_QuotedFieldsAndEscapes() {
+        // 引號內的逗號不分欄，"" 跳脫為單一引號，空欄位保留
+        assertThat(BookImportService.parseCsvLine("a,\"b,c\",\"say \"\"hi\"\"\",,e"))
+                .containsExactly("a", "b,c", "say \"hi\"", "", "e");
+        assertThat(BookImportService.parseCsvLine("\"\"")).containsExactly("");
+        assertThat(BookImportService.parseCsvLine("x,")).containsExactly("x", "");
+    }
+
+    @Test
+    void testParseCsvLine_UnterminatedQuote() {
+        assertThatThrownBy(() -> BookImportService.parseCsvLine("a,\"b"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Unterminated");
+    }
+
+    @Test
+    void testParseCsvRow_OptionalColumns() {
+        BookDtos.ImportRow full = BookImportService.parseCsvRow(
+                "Effective Java,Joshua Bloch, 2018 ,1,\"{\"\"isbn\"\":\"\"1\"\"}\",2,3");
+        assertThat(full).isEqualTo(new BookDtos.ImportRow(
+                "Effective Java", "Joshua Bloch", 2018, 1L, "{\"isbn\":\"1\"}", 2L, 3));
+
+        // extra、branch_id、quantity 可省略或留空
+        assertThat(BookImportService.parseCsvRow("Clean Code,Robert C. Martin,2008,1"))
+                .isEqualTo(new BookDtos.ImportRow("Clean Code", "Robert C. Martin", 2008, 1L, null, null, null));
+        assertThat(BookImportService.parseCsvRow("Clean Code,Robert C. Martin,2008,1,,,"))
+                .isEqualTo(new BookDtos.ImportRow("Clean Code", "Robert C. Martin", 2008, 1L, null, null, null));
+    }
+
+    @Test
+    void testParseCsvRow_InvalidRows() {
+        assertThatThrownBy(() -> BookImportService.parseCsvRow("only,three,columns"))
+                .isInstanceOf(IllegalArgumentException.class);
+        // NumberFormatException 是 IllegalArgumentException，會被當成該行錯誤
+        assertThatThrownBy(() -> BookImportService.parseCsvRow("t,a,not-a-year,1"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testIsCsvHeader() {
+        assertThat(BookImportService.isCsvHeader("title,author,publish_year,category_id")).isTrue();
+        assertThat(BookImportService.isCsvHeader("  Title,Author,Publish_Year,Category_Id")).isTrue();
+        assertThat(BookImportService.isCsvHeader("Effective Java,Joshua Bloch,2018,1")).isFalse();
+    }
+
+    @Test
+    void testParseNdjsonRow_Object() throws Exception {
+        assertThat(importService.parseNdjsonRow(
+                "{\"title\":\"Effective Java\",\"author\":\"Joshua Bloch\",\"publishYear\":2018,\"categoryId\":1}"))
+                .isEqualTo(new BookDtos.ImportRow("Effective Java", "Joshua Bloch", 2018, 1L, null, null, null));
+    }
+
+    @Test
+    void testParseNdjsonRow_NullOrNonObjectIsRowError() {
+        for (String line : List.of("null", "[1,2]", "42", "\"text\"")) {
+            assertThatThrownBy(() -> importService.parseNdjsonRow(line))
+                    .as(line)
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+}
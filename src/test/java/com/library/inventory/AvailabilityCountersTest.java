@@ -0,0 +1,191 @@
+package com.library.inventory;
+
+import com.library.book.BookController;
+import com.library.book.dto.BookDtos;
+import com.library.loan.LoanService;
+import com.library.loan.dto.BorrowDtos;
+import com.library.user.User;
+import com.library.user.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 館藏計數（book_branch_availability）必須與 book_copies 一致：借書、還書、新增與刪除副本、對帳
+ */
+@SpringBootTest
+@ActiveProfiles("dev")
+class AvailabilityCountersTest {
+
+    @Autowired
+    private LoanService loanService;
+
+    @Autowired
+    private BookController bookController;
+
+    @Autowired
+    private AvailabilityReconciliationJob reconciliationJob;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private User testUser;
+    private long categoryId;
+    private long mainBranchId;
+    private long eastBranchId;
+
+    @BeforeEach
+    void setUp() {
+        testUser = new User();
+        testUser.setUsername("counter_" + System.nanoTime());
+        testUser.setPasswordHash("password");
+        testUser.setRole("Member");
+        testUser = userRepository.save(testUser);
+
+        categoryId = jdbcTemplate.queryForObject("SELECT id FROM book_categories WHERE category = 'BOOK'", Long.class);
+        mainBranchId = jdbcTemplate.queryForObject("SELECT id FROM branches WHERE branch_name = 'Main Library'", Long.class);
+        eastBranchId = jdbcTemplate.queryForObject("SELECT id FROM branches WHERE branch_name = 'East Branch'", Long.class);
+
+        // 刪除副本需要館員權限
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                "admin", null, List.of(new SimpleGrantedAuthority("ROLE_Librarian"))));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void testCreateBook_AddsCountersPerBranch() {
+        Long bookId = createBook(2, 1);
+
+        assertThat(counter(bookId, mainBranchId)).containsExactly(2, 2);
+        assertThat(counter(bookId, eastBranchId)).containsExactly(1, 1);
+    }
+
+    @Test
+    void testBorrowAndReturn_AdjustAvailable() {
+        Long bookId = createBook(3, 0);
+        List<Long> copyIds = copyIds(bookId, mainBranchId);
+
+        // 借出兩本：可借 -2，總數不變
+        BorrowDtos.BorrowResponse borrowed = loanService.borrowBooks(testUser.getId(), new BorrowDtos.BorrowRequest(List.of(
+                new BorrowDtos.BorrowItem(copyIds.get(0), null),
+                new BorrowDtos.BorrowItem(copyIds.get(1), null))));
+        assertThat(counter(bookId, mainBranchId)).containsExactly(3, 1);
+
+        // 批次還書
+        loanService.returnBooks(testUser.getId(), new BorrowDtos.ReturnRequest(List.of(
+                new BorrowDtos.ReturnItem(copyIds.get(0), null))));
+        assertThat(counter(bookId, mainBranchId)).containsExactly(3, 2);
+
+        // 依 loan id 還書
+        Long secondLoanId = borrowed.loans().stream()
+                .filter(loan -> loan.copyId().equals(copyIds.get(1)))
+                .findFirst()
+                .orElseThrow()
+                .loanId();
+        loanService.returnBook(secondLoanId);
+        assertThat(counter(bookId, mainBranchId)).containsExactly(3, 3);
+
+        // 已歸還的借閱再還一次不會重複累加
+        loanService.returnBook(secondLoanId);
+        assertThat(counter(bookId, mainBranchId)).containsExactly(3, 3);
+    }
+
+    @Test
+    void testBorrow_CounterRowNotLockedUntilCommit() {
+        Long bookId = createBook(3, 0);
+        List<Long> copyIds = copyIds(bookId, mainBranchId);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            loanService.borrowBooks(testUser.getId(), new BorrowDtos.BorrowRequest(List.of(
+                    new BorrowDtos.BorrowItem(copyIds.get(0), null))));
+
+            // 交易尚未 commit：其他連線可以立即鎖到計數（NOWAIT 不會失敗），增減量也還沒寫入
+            Integer available = CompletableFuture.supplyAsync(() -> jdbcTemplate.queryForObject(
+                    "SELECT available FROM book_branch_availability WHERE book_id = ? AND branch_id = ? FOR UPDATE NOWAIT",
+                    Integer.class, bookId, mainBranchId)).join();
+            assertThat(available).isEqualTo(3);
+        });
+
+        assertThat(counter(bookId, mainBranchId)).containsExactly(3, 2);
+    }
+
+    @Test
+    void testBorrowByTitle_DecrementsAvailable() {
+        Long bookId = createBook(2, 0);
+
+        loanService.borrowByTitle(testUser.getId(), new BorrowDtos.BorrowByTitleRequest(bookId, mainBranchId, 2));
+
+        assertThat(counter(bookId, mainBranchId)).containsExactly(2, 0);
+    }
+
+    @Test
+    void testDeleteCopy_OnlyAvailableCopiesDecrementAvailable() {
+        Long bookId = createBook(2, 0);
+        List<Long> copyIds = copyIds(bookId, mainBranchId);
+
+        bookController.deleteBookCopy(copyIds.get(0));
+
+        // soft delete：副本筆數不變，可借 -1
+        assertThat(counter(bookId, mainBranchId)).containsExactly(2, 1);
+    }
+
+    @Test
+    void testReconcileAll_RepairsCorruptedAndMissingCounters() {
+        Long bookId = createBook(2, 1);
+        jdbcTemplate.update("UPDATE book_branch_availability SET total = 7, available = -3 WHERE book_id = ? AND branch_id = ?",
+                bookId, mainBranchId);
+        jdbcTemplate.update("DELETE FROM book_branch_availability WHERE book_id = ? AND branch_id = ?",
+                bookId, eastBranchId);
+
+        int corrected = reconciliationJob.reconcileAll();
+
+        assertThat(corrected).isGreaterThanOrEqualTo(2);
+        assertThat(counter(bookId, mainBranchId)).containsExactly(2, 2);
+        assertThat(counter(bookId, eastBranchId)).containsExactly(1, 1);
+    }
+
+    private Long createBook(int mainCopies, int eastCopies) {
+        List<BookDtos.BookCopyRequest> copies = eastCopies > 0
+                ? List.of(new BookDtos.BookCopyRequest(mainBranchId, mainCopies), new BookDtos.BookCopyRequest(eastBranchId, eastCopies))
+                : List.of(new BookDtos.BookCopyRequest(mainBranchId, mainCopies));
+        BookDtos.CreateBookRequest request = new BookDtos.CreateBookRequest(
+                "Counter Test " + System.nanoTime(), "Counter Author", 2024, categoryId, null, copies);
+        Map<?, ?> body = (Map<?, ?>) bookController.create(request, null).getBody();
+        return ((Number) body.get("id")).longValue();
+    }
+
+    private List<Long> copyIds(Long bookId, long branchId) {
+        return jdbcTemplate.queryForList(
+                "SELECT id FROM book_copies WHERE book_id = ? AND branch_id = ? ORDER BY id", Long.class, bookId, branchId);
+    }
+
+    private List<Integer> counter(Long bookId, long branchId) {
+        Map<String, Object> row = jdbcTemplate.queryForMap(
+                "SELECT total, available FROM book_branch_availability WHERE book_id = ? AND branch_id = ?", bookId, branchId);
+        return List.of(((Number) row.get("total")).intValue(), ((Number) row.get("available")).intValue());
+    }
+}
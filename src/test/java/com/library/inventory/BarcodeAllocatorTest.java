@@ -0,0 +1,54 @@
+package com.library.inventory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BarcodeAllocatorTest {
+
+    @Mock
+    private InventoryItemRepository inventoryItemRepository;
+
+    @InjectMocks
+    private BarcodeAllocator allocator;
+
+    @Test
+    void testAllocate_ServesFromBlockWithoutExtraQueries() {
+        when(inventoryItemRepository.barcodeBlockSize()).thenReturn(100L);
+        when(inventoryItemRepository.allocateBarcodeBlocks(1)).thenReturn(List.of(1L));
+
+        // 同一區塊內多次配置只會取一次序號
+        List<String> first = allocator.allocate(3);
+        String single = allocator.allocate();
+
+        assertThat(first).containsExactly("C0000000001", "C0000000002", "C0000000003");
+        assertThat(single).isEqualTo("C0000000004");
+        verify(inventoryItemRepository, times(1)).allocateBarcodeBlocks(anyInt());
+    }
+
+    @Test
+    void testAllocate_BulkSpansMultipleBlocksInOneQuery() {
+        when(inventoryItemRepository.barcodeBlockSize()).thenReturn(100L);
+        when(inventoryItemRepository.allocateBarcodeBlocks(3)).thenReturn(List.of(101L, 201L, 301L));
+
+        // 250 筆需要 3 個區塊，以單次查詢取得且不重複
+        List<String> barcodes = allocator.allocate(250);
+
+        assertThat(barcodes).hasSize(250);
+        Set<String> unique = new HashSet<>(barcodes);
+        assertThat(unique).hasSize(250);
+        assertThat(barcodes.get(0)).isEqualTo("C0000000101");
+        assertThat(barcodes.get(249)).isEqualTo("C0000000350");
+        verify(inventoryItemRepository, times(1)).allocateBarcodeBlocks(anyInt());
+    }
+}
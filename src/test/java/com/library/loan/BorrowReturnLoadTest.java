@@ -0,0 +1,286 @@
+package com.library.loan;
+
+import com.library.auth.JwtUtil;
+import com.library.user.User;
+import com.library.user.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 借還書壓力測試（預設不執行）
+ * 以多個使用者同時對熱門書目（Zipf 分佈）借書、還書，統計吞吐量、p50/p99 延遲、鎖等待時間與衝突率
+ *
+ * 執行方式：./mvnw -Pload-test test
+ * 可調整參數（-D）：load.threads, load.durationSeconds, load.titles, load.copiesPerTitle, load.zipfSkew
+ * 平台執行緒與 virtual thread 兩種模式的比較見 BorrowReturnVirtualThreadLoadTest，悲觀鎖與樂觀借書的比較見 BorrowReturnOptimisticLoadTest
+ */
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("dev")
+class BorrowReturnLoadTest {
+
+    private static final int THREADS = Integer.getInteger("load.threads", 16);
+    private static final int DURATION_SECONDS = Integer.getInteger("load.durationSeconds", 30);
+    private static final int TITLES = Integer.getInteger("load.titles", 20);
+    private static final int COPIES_PER_TITLE = Integer.getInteger("load.copiesPerTitle", 5);
+    private static final double ZIPF_SKEW = Double.parseDouble(System.getProperty("load.zipfSkew", "1.2"));
+    private static final long LOCK_SAMPLE_INTERVAL_MS = 5;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Value("${loan.borrow.strategy:pessimistic}")
+    private String borrowStrategy;
+
+    private String runId;
+    private long[][] copyIdsByTitle;
+    private double[] zipfCdf;
+
+    @BeforeEach
+    void setUp() {
+        runId = "LOAD" + System.currentTimeMillis();
+        Long categoryId = jdbcTemplate.queryForObject("SELECT id FROM book_categories WHERE category = 'BOOK'", Long.class);
+        Long branchId = jdbcTemplate.queryForObject("SELECT MIN(id) FROM branches", Long.class);
+
+        // 建立測試用書目與副本
+        copyIdsByTitle = new long[TITLES][];
+        for (int t = 0; t < TITLES; t++) {
+            String title = runId + " title " + t;
+            Long bookId = jdbcTemplate.queryForObject(
+                "INSERT INTO books (unique_book_key, title, author, publish_year, category_id, extra) " +
+                "VALUES (?, ?, 'load', 2024, ?, '{}') RETURNING id",
+                Long.class, title.toLowerCase() + "|load|2024|" + categoryId, title, categoryId);
+            List<Long> copyIds = jdbcTemplate.queryForList(
+                "INSERT INTO book_copies (book_id, branch_id, status, barcode) " +
+                "SELECT ?, ?, 'AVAILABLE', ? || '-' || g FROM generate_series(1, ?) g RETURNING id",
+                Long.class, bookId, branchId, runId + "-" + t, COPIES_PER_TITLE);
+            copyIdsByTitle[t] = copyIds.stream().mapToLong(Long::longValue).toArray();
+            jdbcTemplate.update(
+                "INSERT INTO book_branch_availability (book_id, branch_id, total, available) VALUES (?, ?, ?, ?)",
+                bookId, branchId, COPIES_PER_TITLE, COPIES_PER_TITLE);
+        }
+
+        // 熱門書目分佈：第 k 本的權重為 1 / k^skew
+        zipfCdf = new double[TITLES];
+        double sum = 0;
+        for (int k = 0; k < TITLES; k++) {
+            sum += 1.0 / Math.pow(k + 1, ZIPF_SKEW);
+            zipfCdf[k] = sum;
+        }
+        for (int k = 0; k < TITLES; k++) {
+            zipfCdf[k] /= sum;
+        }
+    }
+
+    @Test
+    void testBorrowReturnUnderContention() throws Exception {
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            User user = new User();
+            user.setUsername(runId + "_user" + i);
+            user.setPasswordHash("password");
+            user.setRole("Member");
+            user.setActive(true);
+            user = userRepository.save(user);
+            tokens.add(jwtUtil.generateToken(user.getId(), user.getUsername(), user.getRole()));
+        }
+
+        Stats borrowStats = new Stats();
+        Stats returnStats = new Stats();
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong lockWaitSamples = new AtomicLong();
+
+        // 取樣 pg_stat_activity 中正在等待 Lock 的連線數，估算鎖等待時間
+        ExecutorService sampler = Executors.newSingleThreadExecutor();
+        sampler.submit(() -> {
+            while (running.get()) {
+                Long waiting = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM pg_stat_activity WHERE wait_event_type = 'Lock' AND datname = current_database()",
+                    Long.class);
+                lockWaitSamples.addAndGet(waiting != null ? waiting : 0);
+                TimeUnit.MILLISECONDS.sleep(LOCK_SAMPLE_INTERVAL_MS);
+            }
+            return null;
+        });
+
+        ExecutorService workers = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        CountDownLatch endLatch = new CountDownLatch(THREADS);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(DURATION_SECONDS);
+
+        for (String token : tokens) {
+            workers.submit(() -> {
+                try {
+                    startLatch.await();
+                    while (System.nanoTime() < deadline) {
+                        long copyId = pickCopy();
+                        String body = "{\"items\":[{\"bookCopiesId\":" + copyId + "}]}";
+
+                        int status = post("/api/loans/borrow", token, body, borrowStats);
+                        if (status == 201) {
+                            post("/api/loans/return", token, body, returnStats);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    endLatch.countDown();
+                }
+            });
+        }
+
+        long startedAt = System.nanoTime();
+        startLatch.countDown();
+        endLatch.await();
+        long elapsedNanos = System.nanoTime() - startedAt;
+        running.set(false);
+        workers.shutdown();
+        sampler.shutdown();
+        sampler.awaitTermination(5, TimeUnit.SECONDS);
+
+        double elapsedSeconds = elapsedNanos / 1_000_000_000.0;
+        System.out.println("==== Borrow/Return load test (" + (virtualThreads ? "virtual threads" : "platform threads") +
+            ", " + borrowStrategy + " borrow) ====");
+        System.out.printf("threads=%d, duration=%.1fs, titles=%d, copiesPerTitle=%d, zipfSkew=%.2f%n",
+            THREADS, elapsedSeconds, TITLES, COPIES_PER_TITLE, ZIPF_SKEW);
+        borrowStats.print("borrow", elapsedSeconds);
+        returnStats.print("return", elapsedSeconds);
+        System.out.printf("approx. lock wait: %d ms (sampled every %d ms)%n",
+            lockWaitSamples.get() * LOCK_SAMPLE_INTERVAL_MS, LOCK_SAMPLE_INTERVAL_MS);
+
+        // 驗證：有成功借出、沒有伺服器錯誤、副本狀態與借閱紀錄一致
+        assertThat(borrowStats.count(201)).isPositive();
+        assertThat(borrowStats.serverErrors()).isZero();
+        assertThat(returnStats.serverErrors()).isZero();
+        Long inconsistent = jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM book_copies bc " +
+            "WHERE bc.barcode LIKE ? " +
+            "AND (bc.status = 'BORROWED') <> EXISTS (SELECT 1 FROM loans l WHERE l.copy_id = bc.id AND l.returned_at IS NULL)",
+            Long.class, runId + "-%");
+        assertThat(inconsistent).isZero();
+
+        // 館藏計數與副本狀態一致
+        Long driftedCounters = jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM book_branch_availability a " +
+            "JOIN books b ON b.id = a.book_id " +
+            "WHERE b.title LIKE ? " +
+            "AND a.available <> (SELECT COUNT(*) FROM book_copies bc " +
+            "WHERE bc.book_id = a.book_id AND bc.branch_id = a.branch_id AND bc.status = 'AVAILABLE')",
+            Long.class, runId + " title %");
+        assertThat(driftedCounters).isZero();
+    }
+
+    private long pickCopy() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int title = Arrays.binarySearch(zipfCdf, random.nextDouble());
+        title = title >= 0 ? title : Math.min(-title - 1, TITLES - 1);
+        long[] copies = copyIdsByTitle[title];
+        return copies[random.nextInt(copies.length)];
+    }
+
+    private int post(String path, String token, String body, Stats stats) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setBearerAuth(token);
+        headers.setContentType(MediaType.APPLICATION_JSON);
+
+        long start = System.nanoTime();
+        ResponseEntity<String> response = restTemplate.postForEntity(
+            "http://localhost:" + port + path, new HttpEntity<>(body, headers), String.class);
+        int status = response.getStatusCode().value();
+        stats.record(status, System.nanoTime() - start);
+        return status;
+    }
+
+    /**
+     * 單一端點的統計：各狀態碼次數與延遲
+     */
+    private static class Stats {
+        private final Map<Integer, LongAdder> statusCounts = new ConcurrentHashMap<>();
+        private final List<Long> latencies = new ArrayList<>();
+
+        void record(int status, long latencyNanos) {
+            statusCounts.computeIfAbsent(status, s -> new LongAdder()).increment();
+            synchronized (latencies) {
+                latencies.add(latencyNanos);
+            }
+        }
+
+        long count(int status) {
+            LongAdder adder = statusCounts.get(status);
+            return adder != null ? adder.sum() : 0;
+        }
+
+        long total() {
+            return statusCounts.values().stream().mapToLong(LongAdder::sum).sum();
+        }
+
+        long serverErrors() {
+            return statusCounts.entrySet().stream()
+                .filter(e -> e.getKey() >= 500)
+                .mapToLong(e -> e.getValue().sum())
+                .sum();
+        }
+
+        void print(String name, double elapsedSeconds) {
+            long[] sorted;
+            synchronized (latencies) {
+                sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+            }
+            long total = total();
+            double conflictRate = total == 0 ? 0 : 100.0 * count(409) / total;
+            System.out.printf("%s: requests=%d, throughput=%.1f req/s, p50=%.2f ms, p99=%.2f ms, conflicts=%.2f%%, status=%s%n",
+                name, total, total / elapsedSeconds, percentile(sorted, 50), percentile(sorted, 99), conflictRate, statusCounts);
+        }
+
+        private static double percentile(long[] sorted, double p) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+            return sorted[Math.max(index, 0)] / 1_000_000.0;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.library.loan;
+
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * 借還書壓力測試：樂觀借書模式
+ * 與 BorrowReturnLoadTest（悲觀鎖）相同的情境，一起執行即可比較兩種借書模式的吞吐量、延遲與衝突率
+ */
+@TestPropertySource(properties = "loan.borrow.strategy=optimistic")
+class BorrowReturnOptimisticLoadTest extends BorrowReturnLoadTest {
+}
@@ -0,0 +1,12 @@
+package com.library.loan;
+
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * 借還書壓力測試：virtual thread 模式
+ * 與 BorrowReturnLoadTest（平台執行緒）相同的情境，一起執行即可比較兩種模式的吞吐量與延遲
+ * 建議加大同時使用者數以凸顯差異，例如：./mvnw -Pload-test test -Dload.threads=200
+ */
+@TestPropertySource(properties = "spring.threads.virtual.enabled=true")
+class BorrowReturnVirtualThreadLoadTest extends BorrowReturnLoadTest {
+}
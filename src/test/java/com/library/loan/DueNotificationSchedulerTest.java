@@ -1,16 +1,27 @@
 package com.library.loan;
 
+import com.library.notification.Notification;
+import com.library.notification.NotificationDispatcher;
+import com.library.scheduling.JobLeaseService;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.function.IntConsumer;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -19,32 +30,85 @@ class DueNotificationSchedulerTest {
     @Mock
     private LoanRepository loanRepository;
 
-    @InjectMocks
+    @Mock
+    private NotificationDispatcher notificationDispatcher;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Mock
+    private JobLeaseService jobLeaseService;
+
     private DueNotificationScheduler scheduler;
 
+    @BeforeEach
+    void setUp() {
+        // TransactionTemplate 直接執行 callback
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        // 單一節點、不分片：直接執行 shard 0
+        when(jobLeaseService.shards()).thenReturn(1);
+        when(jobLeaseService.runSharded(anyString(), any(), any(), any())).thenAnswer(invocation -> {
+            invocation.<IntConsumer>getArgument(3).accept(0);
+            return 1;
+        });
+        // 每 1 分鐘檢查，5 天內到期，每個 chunk 2 筆
+        scheduler = new DueNotificationScheduler(loanRepository, notificationDispatcher, transactionTemplate,
+                jobLeaseService, 1, 5, 2);
+    }
+
     @Test
     void testNotifyDueSoon_WithOverdueBooks() {
-        // 測試Scheduler確實有去查詢Loans的過期日
-        // 建立 Loan
-        Loan testLoan = new Loan();
-        testLoan.setId(1L);
-        // 設定5天後就要還書了
-        testLoan.setDueDate(LocalDate.now().plusDays(5));
-        testLoan.setReturnedDate(null);
-        
-        // 建立 User
-        com.library.user.User testUser = new com.library.user.User();
-        testUser.setUsername("testuser");
-        testLoan.setUser(testUser);
-
-        List<Loan> overdueLoans = List.of(testLoan);
-        when(loanRepository.findByDueDate(any(LocalDate.class)))
-                .thenReturn(overdueLoans);
+        // 測試Scheduler確實有去查詢未通知過、5天內到期的借閱記錄
+        LocalDate dueDate = LocalDate.now().plusDays(5);
+        List<Object[]> loans = List.<Object[]>of(new Object[]{1L, "testuser", dueDate});
+        when(loanRepository.claimNotifications(eq(DueNotificationScheduler.KIND_DUE_SOON),
+                any(LocalDate.class), any(LocalDate.class), anyLong(), anyInt(), anyInt(), anyInt()))
+                .thenReturn(loans);
 
         // 執行測試
         assertDoesNotThrow(() -> scheduler.notifyDueSoon());
 
-        // 驗證 repository 被調用，有去查過期日
-        verify(loanRepository, times(1)).findByDueDate(any(LocalDate.class));
+        // 驗證查詢範圍為 [今天, 6 天後)，不足一個 chunk 時只查一次
+        verify(loanRepository, times(1)).claimNotifications(
+                DueNotificationScheduler.KIND_DUE_SOON, LocalDate.now(), LocalDate.now().plusDays(6), 0L, 1, 0, 2);
+
+        // 驗證通知交給 dispatcher，並以 loan id 去重
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Notification>> captor = ArgumentCaptor.forClass(List.class);
+        verify(notificationDispatcher).dispatchAll(captor.capture());
+        assertThat(captor.getValue()).singleElement()
+                .satisfies(n -> {
+                    assertThat(n.loanId()).isEqualTo(1L);
+                    assertThat(n.recipient()).isEqualTo("testuser");
+                    assertThat(n.dedupeKey()).isEqualTo("DUE_SOON:1");
+                });
+    }
+
+    @Test
+    void testNotifyDueSoon_PagesThroughChunks() {
+        // 測試以 keyset 分批處理：滿一個 chunk 就從最後一筆 id 之後繼續查
+        LocalDate dueDate = LocalDate.now().plusDays(3);
+        when(loanRepository.claimNotifications(anyString(), any(LocalDate.class), any(LocalDate.class), eq(0L), anyInt(), anyInt(), anyInt()))
+                .thenReturn(List.of(new Object[]{1L, "a", dueDate}, new Object[]{4L, "b", dueDate}));
+        when(loanRepository.claimNotifications(anyString(), any(LocalDate.class), any(LocalDate.class), eq(4L), anyInt(), anyInt(), anyInt()))
+                .thenReturn(List.<Object[]>of(new Object[]{7L, "c", dueDate}));
+
+        scheduler.notifyDueSoon();
+
+        verify(loanRepository).claimNotifications(anyString(), any(LocalDate.class), any(LocalDate.class), eq(0L), eq(1), eq(0), eq(2));
+        verify(loanRepository).claimNotifications(anyString(), any(LocalDate.class), any(LocalDate.class), eq(4L), eq(1), eq(0), eq(2));
+        verifyNoMoreInteractions(loanRepository);
+    }
+
+    @Test
+    void testNotifyDueSoon_NothingNew() {
+        // 測試所有記錄都已通知過：查一次即結束
+        when(loanRepository.claimNotifications(anyString(), any(LocalDate.class), any(LocalDate.class), anyLong(), anyInt(), anyInt(), anyInt()))
+                .thenReturn(List.of());
+
+        scheduler.notifyDueSoon();
+
+        verify(loanRepository, times(1)).claimNotifications(anyString(), any(LocalDate.class), any(LocalDate.class), anyLong(), anyInt(), anyInt(), anyInt());
     }
 }
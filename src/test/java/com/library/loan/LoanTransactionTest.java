@@ -9,15 +9,20 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -91,6 +96,27 @@ class LoanTransactionTest {
         assertThat(loans).isEmpty();
     }
 
+    @Test
+    void testBorrowValidation_JournalLimitExceeded() {
+        // 測試一次借 6 本期刊（上限 5 本）: 預期在前置檢查就被擋下
+        List<BorrowDtos.BorrowItem> items = List.of(
+            new BorrowDtos.BorrowItem(null, "JOURNAL001"),
+            new BorrowDtos.BorrowItem(null, "JOURNAL002"),
+            new BorrowDtos.BorrowItem(null, "JOURNAL003"),
+            new BorrowDtos.BorrowItem(null, "JOURNAL004"),
+            new BorrowDtos.BorrowItem(null, "JOURNAL005"),
+            new BorrowDtos.BorrowItem(null, "JOURNAL006")
+        );
+        BorrowDtos.BorrowRequest request = new BorrowDtos.BorrowRequest(items);
+
+        assertThatThrownBy(() -> loanService.borrowBooks(testUser.getId(), request))
+            .isInstanceOf(ResponseStatusException.class)
+            .hasMessageContaining("JOURNAL limit exceeded");
+
+        // 驗證沒有任何 loan 記錄
+        assertThat(loanService.getUserLoans(testUser.getId())).isEmpty();
+    }
+
     @Test
     void testConcurrentBorrow_SameCopy_RowLock() throws InterruptedException {
         // 建立兩個用戶，測試同時借書時，只有一個會成功
@@ -144,6 +170,97 @@ class LoanTransactionTest {
         assertThat(item.getStatus()).isEqualTo("BORROWED");
     }
 
+    @Test
+    void testConcurrentBorrowByTitle_SkipLocked_EachGetsDifferentCopy() throws InterruptedException {
+        // 找一個分館內至少有 2 本可借副本的書目，兩個使用者同時依書名借 1 本，預期都成功且拿到不同副本
+        Map<List<Long>, List<Long>> availableByBookBranch = inventoryItemRepository.findAll().stream()
+            .filter(item -> "AVAILABLE".equals(item.getStatus()))
+            .collect(Collectors.groupingBy(
+                item -> List.of(item.getBook().getId(), item.getBranch().getId()),
+                Collectors.mapping(InventoryItem::getId, Collectors.toList())));
+        List<Long> bookBranch = availableByBookBranch.entrySet().stream()
+            .filter(entry -> entry.getValue().size() >= 2)
+            .map(Map.Entry::getKey)
+            .findFirst()
+            .orElseThrow(() -> new RuntimeException("No title with 2 available copies found"));
+        
+        User user1 = createTestUser("title1");
+        User user2 = createTestUser("title2");
+        CountDownLatch startLatch = new CountDownLatch(1);
+        List<Long> borrowedCopyIds = new CopyOnWriteArrayList<>();
+        AtomicInteger failureCount = new AtomicInteger(0);
+        
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        for (User user : List.of(user1, user2)) {
+            executor.submit(() -> {
+                try {
+                    startLatch.await();
+                    BorrowDtos.BorrowResponse response = loanService.borrowByTitle(user.getId(),
+                        new BorrowDtos.BorrowByTitleRequest(bookBranch.get(0), bookBranch.get(1), 1));
+                    response.loans().forEach(loan -> borrowedCopyIds.add(loan.copyId()));
+                } catch (Exception e) {
+                    failureCount.incrementAndGet();
+                    System.out.println("Thread failed: " + e.getMessage());
+                }
+                return null;
+            });
+        }
+        
+        startLatch.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+        
+        assertThat(failureCount.get()).isZero();
+        assertThat(borrowedCopyIds).hasSize(2).doesNotHaveDuplicates();
+        for (Long copyId : borrowedCopyIds) {
+            assertThat(inventoryItemRepository.findById(copyId).orElseThrow().getStatus()).isEqualTo("BORROWED");
+        }
+    }
+
+    @Test
+    void testBorrowByTitle_NotEnoughCopies_AllOrNothing() {
+        // 分館有 N 本可借副本，依書名借 N+1 本: 預期 409，已挑選的 N 本全部 rollback（狀態與館藏計數都不變）
+        // N+1 不超過 JOURNAL 上限（5），不會先被分類上限擋下
+        Map<List<Long>, List<Long>> availableByBookBranch = inventoryItemRepository.findAll().stream()
+            .filter(item -> "AVAILABLE".equals(item.getStatus()))
+            .collect(Collectors.groupingBy(
+                item -> List.of(item.getBook().getId(), item.getBranch().getId()),
+                Collectors.mapping(InventoryItem::getId, Collectors.toList())));
+        Map.Entry<List<Long>, List<Long>> target = availableByBookBranch.entrySet().stream()
+            .filter(entry -> entry.getValue().size() < 5)
+            .findFirst()
+            .orElseThrow(() -> new RuntimeException("No title with fewer than 5 available copies in a branch found"));
+        Long bookId = target.getKey().get(0);
+        Long branchId = target.getKey().get(1);
+        List<Long> copyIds = target.getValue();
+        List<Object> countersBefore = availabilityCounter(bookId, branchId);
+        
+        BorrowDtos.BorrowByTitleRequest request = new BorrowDtos.BorrowByTitleRequest(
+            bookId, branchId, copyIds.size() + 1);
+        
+        assertThatThrownBy(() -> loanService.borrowByTitle(testUser.getId(), request))
+            .isInstanceOfSatisfying(ResponseStatusException.class,
+                e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.CONFLICT))
+            .hasMessageContaining("Not enough available copies");
+        
+        assertThat(loanService.getUserLoans(testUser.getId())).isEmpty();
+        for (Long copyId : copyIds) {
+            assertThat(inventoryItemRepository.findById(copyId).orElseThrow().getStatus()).isEqualTo("AVAILABLE");
+        }
+        assertThat(availabilityCounter(bookId, branchId)).isEqualTo(countersBefore);
+    }
+
+    /**
+     * 館藏計數 [total, available]
+     */
+    private List<Object> availabilityCounter(Long bookId, Long branchId) {
+        return inventoryItemRepository.findAvailabilityByBookIds(List.of(bookId)).stream()
+            .filter(row -> branchId.equals(((Number) row[1]).longValue()))
+            .map(row -> List.<Object>of(((Number) row[3]).intValue(), ((Number) row[4]).intValue()))
+            .findFirst()
+            .orElseThrow();
+    }
+
     private User createTestUser(String username) {
         User user = new User();
         user.setUsername(username + "_" + System.currentTimeMillis());
@@ -0,0 +1,11 @@
+package com.library.loan;
+
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * 借書交易測試：樂觀模式（loan.borrow.strategy=optimistic）
+ * 與 LoanTransactionTest 相同的情境，確認條件式 UPDATE 的 all-or-nothing 與同一副本併發借書只有一個成功
+ */
+@TestPropertySource(properties = "loan.borrow.strategy=optimistic")
+class OptimisticBorrowTransactionTest extends LoanTransactionTest {
+}
@@ -0,0 +1,138 @@
+package com.library.notification;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+// 排程中的 worker 只在啟動時輪詢一次，不會領走測試建立的通知
+@SpringBootTest
+@ActiveProfiles("dev")
+@TestPropertySource(properties = "notification.outbox.poll-interval-ms=3600000")
+class NotificationOutboxTest {
+
+    @Autowired
+    private NotificationOutbox outbox;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void setUp() {
+        // 其他測試留下的待發送通知延後，讓 claim 只會領到本測試建立的通知
+        jdbcTemplate.update("UPDATE notification_outbox SET next_attempt_at = now() + interval '1 day' WHERE status = 'PENDING'");
+    }
+
+    @Test
+    void testClaim_LeasesEntriesUntilLeaseExpires() {
+        List<Long> ids = enqueue(2);
+
+        List<NotificationOutbox.Entry> claimed = outbox.claim(10, 300);
+
+        assertThat(claimed).extracting(NotificationOutbox.Entry::id).containsExactlyElementsOf(ids);
+        assertThat(claimed.get(0).notification().recipient()).isEqualTo("member1");
+        // 租約期間不會被再次領取
+        assertThat(outbox.claim(10, 300)).isEmpty();
+    }
+
+    @Test
+    void testClaim_SkipsRowsLockedByAnotherWorker() throws Exception {
+        List<Long> ids = enqueue(2);
+        CountDownLatch claimed = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        // 另一個 worker 在交易內領取第一筆後尚未 commit
+        CompletableFuture<List<NotificationOutbox.Entry>> firstWorker = CompletableFuture.supplyAsync(() ->
+                transactionTemplate.execute(status -> {
+                    List<NotificationOutbox.Entry> entries = outbox.claim(1, 300);
+                    claimed.countDown();
+                    try {
+                        release.await(30, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    status.setRollbackOnly();
+                    return entries;
+                }));
+        assertThat(claimed.await(30, TimeUnit.SECONDS)).isTrue();
+
+        // 不會等待被鎖住的資料列，直接領取下一筆
+        List<NotificationOutbox.Entry> secondWorker = CompletableFuture.supplyAsync(() -> outbox.claim(10, 300))
+                .get(10, TimeUnit.SECONDS);
+        release.countDown();
+
+        assertThat(firstWorker.get(30, TimeUnit.SECONDS)).extracting(NotificationOutbox.Entry::id).containsExactly(ids.get(0));
+        assertThat(secondWorker).extracting(NotificationOutbox.Entry::id).containsExactly(ids.get(1));
+
+        // 第一個 worker rollback 後租約也跟著撤銷，通知可以再被領取
+        assertThat(outbox.claim(10, 300)).extracting(NotificationOutbox.Entry::id).containsExactly(ids.get(0));
+    }
+
+    @Test
+    void testMarkFailed_ExponentialBackoffThenFailed() {
+        long id = enqueue(1).get(0);
+
+        outbox.markFailed(id, "first", 3, 30);
+        assertThat(state(id)).containsEntry("status", "PENDING").containsEntry("attempts", 1).containsEntry("last_error", "first");
+        assertThat(secondsUntilNextAttempt(id)).isCloseTo(30, within(5.0));
+
+        outbox.markFailed(id, "second", 3, 30);
+        assertThat(state(id)).containsEntry("status", "PENDING").containsEntry("attempts", 2);
+        assertThat(secondsUntilNextAttempt(id)).isCloseTo(60, within(5.0));
+
+        // 達到最大次數後不再重試
+        outbox.markFailed(id, "third", 3, 30);
+        assertThat(state(id)).containsEntry("status", "FAILED").containsEntry("attempts", 3).containsEntry("last_error", "third");
+        jdbcTemplate.update("UPDATE notification_outbox SET next_attempt_at = now() WHERE id = ?", id);
+        assertThat(outbox.claim(10, 300)).isEmpty();
+    }
+
+    @Test
+    void testMarkSent_ClearsPendingEntries() {
+        List<Long> ids = enqueue(2);
+        outbox.claim(10, 300);
+
+        outbox.markSent(ids);
+
+        for (Long id : ids) {
+            assertThat(state(id)).containsEntry("status", "SENT").containsEntry("attempts", 1);
+        }
+    }
+
+    private List<Long> enqueue(int count) {
+        String prefix = "outbox-test-" + System.nanoTime() + "-";
+        List<Notification> notifications = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            notifications.add(new Notification(null, "DUE_SOON", "member1", "message " + i, prefix + i));
+        }
+        outbox.enqueue(notifications);
+        return jdbcTemplate.queryForList(
+                "SELECT id FROM notification_outbox WHERE dedupe_key LIKE ? ORDER BY id", Long.class, prefix + "%");
+    }
+
+    private Map<String, Object> state(long id) {
+        return jdbcTemplate.queryForMap("SELECT status, attempts, last_error FROM notification_outbox WHERE id = ?", id);
+    }
+
+    private double secondsUntilNextAttempt(long id) {
+        return jdbcTemplate.queryForObject(
+                "SELECT EXTRACT(EPOCH FROM next_attempt_at - now()) FROM notification_outbox WHERE id = ?", Double.class, id);
+    }
+}
@@ -0,0 +1,146 @@
+package com.library.notification;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class NotificationOutboxWorkerTest {
+
+    private static final int MAX_ATTEMPTS = 3;
+    private static final int BACKOFF_SECONDS = 30;
+
+    @Mock
+    private NotificationOutbox outbox;
+
+    @Mock
+    private NotificationSink sink;
+
+    private SimpleMeterRegistry meterRegistry;
+    private NotificationOutboxWorker worker;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        // 送出期限 1 秒、租約 5 秒
+        worker = new NotificationOutboxWorker(outbox, sink, meterRegistry, 10, 4, MAX_ATTEMPTS, BACKOFF_SECONDS, 5, 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        worker.shutdown();
+    }
+
+    @Test
+    void testDrainBatch_MarksSentAndRetriesFailures() throws Exception {
+        NotificationOutbox.Entry ok = entry(1L, 0, "ok");
+        NotificationOutbox.Entry broken = entry(2L, 0, "broken");
+        when(outbox.claim(10, 5)).thenReturn(List.of(ok, broken));
+        doAnswer(invocation -> {
+            if (invocation.getArgument(0).equals(broken.notification())) {
+                throw new IllegalStateException("503 Service Unavailable");
+            }
+            return null;
+        }).when(sink).send(any());
+
+        assertThat(worker.drainBatch()).isEqualTo(2);
+
+        verify(outbox).markSent(List.of(1L));
+        verify(outbox).markFailed(2L, "503 Service Unavailable", MAX_ATTEMPTS, BACKOFF_SECONDS);
+        assertThat(deliveries("sent")).isEqualTo(1);
+        assertThat(deliveries("retry")).isEqualTo(1);
+        assertThat(deliveries("failed")).isZero();
+    }
+
+    @Test
+    void testDrainBatch_LastAttemptCountsAsFailed() throws Exception {
+        NotificationOutbox.Entry lastAttempt = entry(3L, MAX_ATTEMPTS - 1, "last");
+        when(outbox.claim(10, 5)).thenReturn(List.of(lastAttempt));
+        doThrow(new IllegalStateException("boom")).when(sink).send(any());
+
+        worker.drainBatch();
+
+        verify(outbox).markFailed(3L, "boom", MAX_ATTEMPTS, BACKOFF_SECONDS);
+        assertThat(deliveries("failed")).isEqualTo(1);
+        assertThat(deliveries("retry")).isZero();
+    }
+
+    @Test
+    void testDrainBatch_SlowSendTimesOutBeforeLease() throws Exception {
+        NotificationOutbox.Entry slow = entry(4L, 0, "slow");
+        NotificationOutbox.Entry fast = entry(5L, 0, "fast");
+        when(outbox.claim(10, 5)).thenReturn(List.of(slow, fast));
+        doAnswer(invocation -> {
+            if (invocation.getArgument(0).equals(slow.notification())) {
+                Thread.sleep(30_000);
+            }
+            return null;
+        }).when(sink).send(any());
+
+        long startedAt = System.nanoTime();
+        worker.drainBatch();
+        long elapsedMillis = (System.nanoTime() - startedAt) / 1_000_000;
+
+        // 在送出期限（1 秒）後就放棄等待，不會等到 sink 回應
+        assertThat(elapsedMillis).isLessThan(5_000);
+        verify(outbox).markFailed(4L, "Send timed out", MAX_ATTEMPTS, BACKOFF_SECONDS);
+        verify(outbox).markSent(List.of(5L));
+    }
+
+    @Test
+    void testDrain_StopsWhenBatchIsNotFull() {
+        when(outbox.claim(10, 5)).thenReturn(List.of(entry(6L, 0, "only")));
+
+        worker.drain();
+
+        verify(outbox, times(1)).claim(anyInt(), eq(5));
+    }
+
+    @Test
+    void testDrain_InterruptedKeepsInterruptStatus() {
+        CountDownLatch release = new CountDownLatch(1);
+        when(outbox.claim(10, 5)).thenReturn(List.of(entry(7L, 0, "interrupted")));
+        doAnswer(invocation -> {
+            release.await();
+            return null;
+        }).when(sink).send(any());
+
+        Thread.currentThread().interrupt();
+        worker.drain();
+        release.countDown();
+
+        // Thread.interrupted() 同時清除中斷狀態，不影響其他測試
+        assertThat(Thread.interrupted()).isTrue();
+        verify(outbox, never()).markSent(any());
+    }
+
+    @Test
+    void testConstructor_SendTimeoutMustBeShorterThanLease() {
+        assertThatThrownBy(() -> new NotificationOutboxWorker(
+                outbox, sink, meterRegistry, 10, 4, MAX_ATTEMPTS, BACKOFF_SECONDS, 300, 300))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private double deliveries(String result) {
+        return meterRegistry.get("library.notification.outbox.deliveries").tag("result", result).counter().count();
+    }
+
+    private static NotificationOutbox.Entry entry(long id, int attempts, String key) {
+        return new NotificationOutbox.Entry(id, attempts,
+                new Notification(null, "DUE_SOON", "member1", "message " + key, key));
+    }
+}